@@ -15,6 +15,13 @@ public interface DataValidator<T> {
 
     /**
      * 验证数据的有效性。
+     * <p>
+     * 默认在主线程中按资源位置顺序调用；{@link #threadSafe()} 返回 true 时在后台线程中与解码一起并行调用。
+     * </p>
+     * <p>
+     * 文件内容未变化且上一次全部验证通过时，重载会直接复用上一次的结果而不再调用此方法；
+     * 结果取决于其他数据或环境时应返回延迟验证或失败，这类结果每次重载都会重新验证。
+     * </p>
      *
      * @param data   要验证的数据
      * @param source 数据来源文件位置
@@ -22,6 +29,19 @@ public interface DataValidator<T> {
      */
     ValidationResult validate(T data, ResourceLocation source);
 
+    /**
+     * 验证器是否可以在后台线程中并行调用。
+     * <p>
+     * 只有不访问世界等游戏状态、也不修改共享可变状态的验证器才应返回 true。
+     * 默认返回 false，数据在后台线程解码后回到主线程验证。
+     * </p>
+     *
+     * @return 是否线程安全
+     */
+    default boolean threadSafe() {
+        return false;
+    }
+
     /**
      * 验证结果。
      */
@@ -65,5 +85,10 @@ public interface DataValidator<T> {
         public ValidationResult validate(Object data, ResourceLocation source) {
             return ValidationResult.success();
         }
+
+        @Override
+        public boolean threadSafe() {
+            return true;
+        }
     }
 }
\ No newline at end of file
@@ -56,4 +56,59 @@ public @interface ExpressionFunction {
      * @return 函数分类，默认为 "general"
      */
     String category() default "general";
+
+    /**
+     * 函数结果的稳定性。
+     * <p>
+     * 声明为 {@link Stability#PURE} 或 {@link Stability#PER_RELOAD} 的函数，
+     * 当所有参数均为字面量时会在编译期求值并折叠为常量，
+     * 例如 {@code isModLoaded('create') && x > 3} 会被编译为 {@code x > 3} 或 {@code false}。
+     * </p>
+     *
+     * @return 函数稳定性，默认为 {@link Stability#VOLATILE}
+     */
+    Stability stability() default Stability.VOLATILE;
+
+    /**
+     * 函数是否可以在多个线程中同时调用。
+     * <p>
+     * 只有表达式调用的所有函数都声明为线程安全时，
+     * {@link com.mafuyu404.oelib.core.CompiledExpression#executeAll(java.util.Collection, boolean) 批量求值}
+     * 才会拆分到多个线程并行执行。访问世界、实体等游戏状态的函数不应声明为线程安全。
+     * </p>
+     *
+     * @return 是否线程安全，默认为 false
+     */
+    boolean threadSafe() default false;
+
+    /**
+     * 函数结果的稳定性级别。
+     */
+    enum Stability {
+        /**
+         * 每次调用结果都可能不同，不进行任何折叠。
+         */
+        VOLATILE,
+        /**
+         * 同一 tick 内结果不变，不进行编译期折叠。
+         */
+        PER_TICK,
+        /**
+         * 同一次数据重载期间结果不变，编译期折叠，表达式引擎重新初始化后重新计算。
+         */
+        PER_RELOAD,
+        /**
+         * 相同参数始终返回相同结果且没有副作用，编译期折叠。
+         */
+        PURE;
+
+        /**
+         * 是否可以在编译期折叠。
+         *
+         * @return 是否可折叠
+         */
+        public boolean isFoldable() {
+            return this == PER_RELOAD || this == PURE;
+        }
+    }
 }
\ No newline at end of file
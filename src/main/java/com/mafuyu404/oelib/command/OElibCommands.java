@@ -0,0 +1,125 @@
+package com.mafuyu404.oelib.command;
+
+import com.mafuyu404.oelib.OElib;
+import com.mafuyu404.oelib.core.ActionScheduler;
+import com.mafuyu404.oelib.core.ExpressionProfiler;
+import com.mojang.brigadier.arguments.IntegerArgumentType;
+import com.mojang.brigadier.builder.LiteralArgumentBuilder;
+import com.mojang.brigadier.context.CommandContext;
+import net.minecraft.commands.CommandSourceStack;
+import net.minecraft.commands.Commands;
+import net.minecraft.network.chat.Component;
+import net.minecraftforge.event.RegisterCommandsEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.minecraftforge.fml.common.Mod;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * OElib 服务端命令。
+ * <p>
+ * 提供 {@code /oelib profile} 用于开关表达式性能分析器和查看最慢的表达式，
+ * {@code /oelib scheduler} 用于查看动作调度器的队列状态。
+ * </p>
+ */
+@Mod.EventBusSubscriber(modid = OElib.MODID, bus = Mod.EventBusSubscriber.Bus.FORGE)
+public class OElibCommands {
+
+    private static final int DEFAULT_TOP = 10;
+
+    @SubscribeEvent
+    public static void onRegisterCommands(RegisterCommandsEvent event) {
+        event.getDispatcher().register(Commands.literal(OElib.MODID)
+                .requires(source -> source.hasPermission(2))
+                .then(profile())
+                .then(Commands.literal("scheduler").executes(OElibCommands::scheduler)));
+    }
+
+    private static LiteralArgumentBuilder<CommandSourceStack> profile() {
+        LiteralArgumentBuilder<CommandSourceStack> profile = Commands.literal("profile")
+                .executes(OElibCommands::status);
+        for (ExpressionProfiler.Mode mode : ExpressionProfiler.Mode.values()) {
+            profile.then(Commands.literal(mode.name().toLowerCase(Locale.ROOT))
+                    .executes(context -> setMode(context, mode)));
+        }
+        return profile
+                .then(Commands.literal("reset").executes(OElibCommands::reset))
+                .then(Commands.literal("top")
+                        .executes(context -> top(context, DEFAULT_TOP))
+                        .then(Commands.argument("count", IntegerArgumentType.integer(1, 100))
+                                .executes(context -> top(context, IntegerArgumentType.getInteger(context, "count")))));
+    }
+
+    private static int status(CommandContext<CommandSourceStack> context) {
+        ExpressionProfiler.Mode mode = ExpressionProfiler.getMode();
+        String message = "Expression profiler: " + mode.name().toLowerCase(Locale.ROOT)
+                + (mode == ExpressionProfiler.Mode.SAMPLED ? " (1/" + ExpressionProfiler.getSampleInterval() + ")" : "")
+                + ", " + ExpressionProfiler.getReports().size() + " expressions tracked";
+        context.getSource().sendSuccess(() -> Component.literal(message), false);
+        return 1;
+    }
+
+    private static int setMode(CommandContext<CommandSourceStack> context, ExpressionProfiler.Mode mode) {
+        ExpressionProfiler.setMode(mode);
+        context.getSource().sendSuccess(() -> Component.literal(
+                "Expression profiler set to " + mode.name().toLowerCase(Locale.ROOT)), true);
+        return 1;
+    }
+
+    private static int reset(CommandContext<CommandSourceStack> context) {
+        ExpressionProfiler.reset();
+        context.getSource().sendSuccess(() -> Component.literal("Expression profiler statistics cleared"), true);
+        return 1;
+    }
+
+    private static int top(CommandContext<CommandSourceStack> context, int count) {
+        List<ExpressionProfiler.Report> reports = ExpressionProfiler.getSlowest(count);
+        if (reports.isEmpty()) {
+            context.getSource().sendFailure(Component.literal(ExpressionProfiler.getMode() == ExpressionProfiler.Mode.OFF
+                    ? "Expression profiler is off, enable it with /oelib profile sampled"
+                    : "No expressions have been profiled yet"));
+            return 0;
+        }
+
+        CommandSourceStack source = context.getSource();
+        for (int i = 0; i < reports.size(); i++) {
+            ExpressionProfiler.Report report = reports.get(i);
+            String line = String.format(Locale.ROOT, "#%d %s total, %d calls, mean %s, p50 %s, p99 %s, max %s, %d errors: %s",
+                    i + 1, formatNanos(report.totalNanos()), report.invocations(), formatNanos((long) report.meanNanos()),
+                    formatNanos(report.p50Nanos()), formatNanos(report.p99Nanos()), formatNanos(report.maxNanos()),
+                    report.exceptions(), report.expression());
+            String origins = report.origins().isEmpty() ? "" : "\n    in " + report.origins().stream()
+                    .map(ExpressionProfiler.Origin::toString)
+                    .sorted()
+                    .collect(Collectors.joining(", "));
+            source.sendSuccess(() -> Component.literal(line + origins), false);
+        }
+        return reports.size();
+    }
+
+    private static int scheduler(CommandContext<CommandSourceStack> context) {
+        ActionScheduler.Metrics metrics = ActionScheduler.getMetrics();
+        String message = String.format(Locale.ROOT,
+                "Action scheduler: %d queued actions in %d batches (lag %d ms), %d async pending, "
+                        + "last tick %d actions in %s (budget %d ms), %d executed, %d failed, %d ticks over budget",
+                metrics.pendingActions(), metrics.queuedBatches(), metrics.lagMillis(), metrics.pendingAsync(),
+                metrics.lastTickActions(), formatNanos(metrics.lastTickNanos()),
+                ActionScheduler.getTickBudget(TimeUnit.MILLISECONDS), metrics.executed(), metrics.failed(),
+                metrics.overBudgetTicks());
+        context.getSource().sendSuccess(() -> Component.literal(message), false);
+        return 1;
+    }
+
+    private static String formatNanos(long nanos) {
+        if (nanos >= 1_000_000) {
+            return String.format(Locale.ROOT, "%.2f ms", nanos / 1_000_000.0);
+        }
+        if (nanos >= 1_000) {
+            return String.format(Locale.ROOT, "%.1f us", nanos / 1_000.0);
+        }
+        return nanos + " ns";
+    }
+}
@@ -0,0 +1,291 @@
+package com.mafuyu404.oelib.core;
+
+import com.mafuyu404.oelib.OElib;
+import net.minecraftforge.event.TickEvent;
+import net.minecraftforge.event.server.ServerStoppingEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.minecraftforge.fml.common.Mod;
+
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 动作调度器。
+ * <p>
+ * {@link ExpressionEngine#executeActions} 在调用方的 tick 中同步执行所有动作，
+ * 大量规则同时触发（例如区块加载）时可能超出 tick 时间。通过 {@link #submit} 提交的动作批次
+ * 进入优先级队列，在服务端 tick 结束时按优先级从高到低执行，每 tick 的执行时间不超过
+ * {@link #setTickBudget 时间预算}，未执行完的动作留到下一 tick 继续，同一批次内的动作保持顺序。
+ * </p>
+ * <p>
+ * 提交时标记为可异步执行的批次不进入队列，直接交给后台线程池执行，只应用于不访问游戏状态的动作。
+ * 批次中有动作调用了未声明为 {@link com.mafuyu404.oelib.api.ExpressionFunction#threadSafe() 线程安全} 的函数时，
+ * 整个批次改为进入队列，在服务端 tick 中执行。
+ * </p>
+ */
+@Mod.EventBusSubscriber(modid = OElib.MODID, bus = Mod.EventBusSubscriber.Bus.FORGE)
+public final class ActionScheduler {
+
+    /**
+     * 默认优先级。
+     */
+    public static final int DEFAULT_PRIORITY = 0;
+
+    private static final PriorityBlockingQueue<Batch> queue = new PriorityBlockingQueue<>(64,
+            Comparator.comparingInt((Batch batch) -> -batch.priority).thenComparingLong(batch -> batch.sequence));
+    private static final AtomicLong sequence = new AtomicLong();
+    private static final AtomicInteger pendingActions = new AtomicInteger();
+    private static final AtomicInteger pendingAsync = new AtomicInteger();
+    private static final LongAdder executed = new LongAdder();
+    private static final LongAdder failed = new LongAdder();
+    private static final LongAdder executedAsync = new LongAdder();
+    private static final LongAdder overBudgetTicks = new LongAdder();
+    private static final AtomicInteger workerIndex = new AtomicInteger();
+    private static final ExecutorService asyncExecutor = Executors.newFixedThreadPool(
+            Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2)), r -> {
+                Thread t = new Thread(r, "OElib-ActionWorker-" + workerIndex.getAndIncrement());
+                t.setDaemon(true);
+                // 工作线程需要能加载模组中的函数类
+                t.setContextClassLoader(ActionScheduler.class.getClassLoader());
+                return t;
+            });
+    private static volatile long tickBudgetNanos = TimeUnit.MILLISECONDS.toNanos(10);
+    private static volatile int lastTickExecuted;
+    private static volatile long lastTickNanos;
+
+    private ActionScheduler() {
+    }
+
+    /**
+     * 以默认优先级提交动作批次。
+     *
+     * @param actions 动作列表
+     * @param context 上下文变量，提交时复制
+     */
+    public static void submit(List<String> actions, Map<String, Object> context) {
+        submit(actions, context, DEFAULT_PRIORITY, false);
+    }
+
+    /**
+     * 提交动作批次。
+     *
+     * @param actions  动作列表
+     * @param context  上下文变量，提交时复制
+     * @param priority 优先级，数值越大越先执行
+     */
+    public static void submit(List<String> actions, Map<String, Object> context, int priority) {
+        submit(actions, context, priority, false);
+    }
+
+    /**
+     * 提交动作批次。
+     *
+     * @param actions  动作列表，其中的 null 会被忽略
+     * @param context  上下文变量，提交时复制
+     * @param priority 优先级，数值越大越先执行，异步执行时忽略
+     * @param async    是否交给后台线程池执行，动作调用了非线程安全的函数时仍在 tick 中执行
+     */
+    public static void submit(List<String> actions, Map<String, Object> context, int priority, boolean async) {
+        if (actions == null || actions.isEmpty()) {
+            return;
+        }
+        List<String> copy = new ArrayList<>(actions.size());
+        for (String action : actions) {
+            if (action != null) {
+                copy.add(action);
+            }
+        }
+        if (copy.isEmpty()) {
+            return;
+        }
+
+        Batch batch = new Batch(Collections.unmodifiableList(copy),
+                context != null ? new HashMap<>(context) : new HashMap<>(), priority, sequence.getAndIncrement());
+        if (async && isThreadSafe(batch.actions)) {
+            pendingAsync.addAndGet(batch.actions.size());
+            asyncExecutor.execute(() -> runAsync(batch));
+            return;
+        }
+        pendingActions.addAndGet(batch.actions.size());
+        queue.add(batch);
+    }
+
+    /**
+     * 设置每 tick 执行动作的时间预算。
+     *
+     * @param budget 时间预算
+     * @param unit   时间单位
+     */
+    public static void setTickBudget(long budget, TimeUnit unit) {
+        if (budget <= 0) {
+            throw new IllegalArgumentException("Tick budget must be positive: " + budget);
+        }
+        tickBudgetNanos = unit.toNanos(budget);
+    }
+
+    /**
+     * 获取每 tick 执行动作的时间预算。
+     *
+     * @param unit 时间单位
+     * @return 时间预算
+     */
+    public static long getTickBudget(TimeUnit unit) {
+        return unit.convert(tickBudgetNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 在当前线程执行队列中的动作，直到队列为空或用完时间预算。
+     * <p>
+     * 服务端 tick 结束时自动调用。每次至少执行一个动作，保证队列始终向前推进。
+     * </p>
+     *
+     * @return 执行的动作数
+     */
+    public static int drain() {
+        long start = System.nanoTime();
+        long deadline = start + tickBudgetNanos;
+        int count = 0;
+
+        Batch batch;
+        while ((batch = queue.poll()) != null) {
+            while (batch.next < batch.actions.size()) {
+                if (count > 0 && System.nanoTime() - deadline >= 0) {
+                    // 保留原序号，剩余动作在下一 tick 仍排在同优先级的后续批次之前
+                    queue.add(batch);
+                    overBudgetTicks.increment();
+                    return finish(start, count);
+                }
+                execute(batch.actions.get(batch.next++), batch.context);
+                pendingActions.decrementAndGet();
+                count++;
+            }
+        }
+        return finish(start, count);
+    }
+
+    /**
+     * 获取调度器指标。
+     *
+     * @return 指标快照
+     */
+    public static Metrics getMetrics() {
+        Batch oldest = null;
+        for (Batch batch : queue) {
+            if (oldest == null || batch.submitted < oldest.submitted) {
+                oldest = batch;
+            }
+        }
+        long lag = oldest != null ? System.nanoTime() - oldest.submitted : 0;
+        return new Metrics(queue.size(), pendingActions.get(), pendingAsync.get(),
+                TimeUnit.NANOSECONDS.toMillis(lag), lastTickExecuted, lastTickNanos,
+                executed.sum(), executedAsync.sum(), failed.sum(), overBudgetTicks.sum());
+    }
+
+    /**
+     * 丢弃队列中所有未执行的动作。
+     *
+     * @return 丢弃的动作数
+     */
+    public static int clear() {
+        List<Batch> dropped = new ArrayList<>();
+        queue.drainTo(dropped);
+        int count = 0;
+        for (Batch batch : dropped) {
+            count += batch.actions.size() - batch.next;
+        }
+        pendingActions.addAndGet(-count);
+        return count;
+    }
+
+    @SubscribeEvent
+    public static void onServerTick(TickEvent.ServerTickEvent event) {
+        if (event.phase == TickEvent.Phase.END) {
+            drain();
+        }
+    }
+
+    @SubscribeEvent
+    public static void onServerStopping(ServerStoppingEvent event) {
+        int dropped = clear();
+        if (dropped > 0) {
+            OElib.LOGGER.warn("Discarded {} scheduled actions on server shutdown", dropped);
+        }
+    }
+
+    private static int finish(long start, int count) {
+        lastTickExecuted = count;
+        lastTickNanos = System.nanoTime() - start;
+        return count;
+    }
+
+    private static boolean isThreadSafe(List<String> actions) {
+        ExpressionNamespace engine = ExpressionEngine.getDefault();
+        for (String action : actions) {
+            if (!engine.handle(action).isThreadSafe()) {
+                OElib.LOGGER.debug("Action '{}' calls functions that are not thread-safe, running its batch on the server tick",
+                        action);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void runAsync(Batch batch) {
+        for (String action : batch.actions) {
+            execute(action, batch.context);
+            pendingAsync.decrementAndGet();
+            executedAsync.increment();
+        }
+    }
+
+    private static void execute(String action, Map<String, Object> context) {
+        executed.increment();
+        if (!ExpressionEngine.executeAction(action, context)) {
+            failed.increment();
+        }
+    }
+
+    /**
+     * 调度器指标。
+     *
+     * @param queuedBatches   队列中的批次数
+     * @param pendingActions  队列中未执行的动作数
+     * @param pendingAsync    后台线程池中未执行的动作数
+     * @param lagMillis       队列中最早提交的批次已等待的时间（毫秒）
+     * @param lastTickActions 上一次执行的动作数
+     * @param lastTickNanos   上一次执行耗时（纳秒）
+     * @param executed        已执行的动作总数，包括异步执行的动作
+     * @param executedAsync   异步执行的动作总数
+     * @param failed          执行失败的动作总数
+     * @param overBudgetTicks 用完时间预算仍有剩余动作的 tick 数
+     */
+    public record Metrics(int queuedBatches, int pendingActions, int pendingAsync, long lagMillis,
+                          int lastTickActions, long lastTickNanos, long executed, long executedAsync,
+                          long failed, long overBudgetTicks) {
+    }
+
+    /**
+     * 动作批次。
+     */
+    private static final class Batch {
+        private final List<String> actions;
+        private final Map<String, Object> context;
+        private final int priority;
+        private final long sequence;
+        private final long submitted = System.nanoTime();
+        private int next;
+
+        private Batch(List<String> actions, Map<String, Object> context, int priority, long sequence) {
+            this.actions = actions;
+            this.context = context;
+            this.priority = priority;
+            this.sequence = sequence;
+        }
+    }
+}
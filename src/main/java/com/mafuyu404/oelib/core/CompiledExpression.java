@@ -0,0 +1,689 @@
+package com.mafuyu404.oelib.core;
+
+import com.mafuyu404.oelib.util.GlobMatcher;
+import org.mvel2.DataConversion;
+import org.mvel2.MVEL;
+import org.mvel2.optimizers.AccessorOptimizer;
+import org.mvel2.optimizers.OptimizerFactory;
+import org.mvel2.optimizers.impl.asm.ASMAccessorOptimizer;
+import org.mvel2.optimizers.impl.refl.ReflectiveAccessorOptimizer;
+
+import java.io.Serializable;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * 已编译表达式句柄。
+ * <p>
+ * 通过 {@link ExpressionEngine#compile(String)} 或 {@link ExpressionNamespace#compile(String)} 获取，
+ * 持有 MVEL 编译结果、引用的变量以及结果类型，并始终按所属引擎实例的函数表编译。
+ * 调用方可以长期持有句柄并直接调用 {@link #execute(Map)}，避免每次求值都按字符串查找缓存。
+ * </p>
+ * <p>
+ * 句柄在 {@link ExpressionEngine#hotReload()} 之后依然有效：引擎每次重新初始化都会递增代数，
+ * 句柄在下一次执行时发现代数变化，若其调用的函数被添加、移除或替换则自动重新编译，否则沿用原编译结果。
+ * </p>
+ * <p>
+ * 启用分层优化（{@link ExpressionEngine#setOptimizationThreshold(int)}）后，表达式首先以反射访问器执行，
+ * 调用次数达到阈值后在后台使用 ASM 优化器重新编译，并原子地替换当前编译结果。
+ * </p>
+ */
+public final class CompiledExpression {
+
+    private static final AtomicReferenceFieldUpdater<CompiledExpression, Binding> BINDING =
+            AtomicReferenceFieldUpdater.newUpdater(CompiledExpression.class, Binding.class, "binding");
+    /**
+     * 每个并行分块的最少上下文数，更小的批量拆分后调度开销超过收益。
+     */
+    private static final int MIN_PARALLEL_CHUNK = 64;
+
+    private final ExpressionNamespace owner;
+    private final String source;
+    private final TypeSignature signature;
+    private volatile Binding binding;
+    private volatile GlobMatcher glob;
+    private volatile ExpressionProfiler.Stats stats;
+
+    CompiledExpression(ExpressionNamespace owner, String source, TypeSignature signature, Binding binding) {
+        this.owner = owner;
+        this.source = source;
+        this.signature = signature;
+        this.binding = binding;
+    }
+
+    /**
+     * 获取表达式源码。
+     *
+     * @return 表达式字符串
+     */
+    public String getSource() {
+        return source;
+    }
+
+    /**
+     * 获取表达式引用的上下文变量。
+     *
+     * @return 变量名集合
+     */
+    public Set<String> getVariables() {
+        return current().variables();
+    }
+
+    /**
+     * 获取编译期推断出的结果类型。
+     *
+     * @return 结果类型，无法推断时为 {@link Object}
+     */
+    public Class<?> getResultType() {
+        return current().resultType();
+    }
+
+    /**
+     * 获取值的分类。
+     *
+     * @return 值的分类
+     */
+    public Kind getKind() {
+        return current().kind();
+    }
+
+    /**
+     * 获取当前执行层级。
+     *
+     * @return 执行层级
+     */
+    public Tier getTier() {
+        return current().tier();
+    }
+
+    /**
+     * 执行表达式。
+     *
+     * @param context 上下文变量
+     * @return 执行结果
+     */
+    public Object execute(Map<String, Object> context) {
+        if (!ExpressionProfiler.isActive()) {
+            return run(context);
+        }
+        ExpressionProfiler.Stats target = profile();
+        long start = ExpressionProfiler.begin(target);
+        boolean failed = true;
+        try {
+            Object result = run(context);
+            failed = false;
+            return result;
+        } finally {
+            ExpressionProfiler.end(target, start, failed);
+        }
+    }
+
+    private Object run(Map<String, Object> context) {
+        Binding current = enter();
+        if (current.kind() != Kind.EXPRESSION) {
+            return current.constant();
+        }
+        if (current.warmedUp) {
+            return MVEL.executeExpression(current.compiled(), context != null ? context : new HashMap<>());
+        }
+        try {
+            warmUp(current);
+            return MVEL.executeExpression(current.compiled(), context != null ? context : new HashMap<>());
+        } finally {
+            OptimizerFactory.clearThreadAccessorOptimizer();
+        }
+    }
+
+    /**
+     * 在变量帧上执行表达式。
+     * <p>
+     * 不会为上下文分配新的映射或解析工厂，适合每 tick 大量调用的场景。
+     * </p>
+     *
+     * @param frame 变量帧
+     * @return 执行结果
+     */
+    public Object execute(VariableFrame frame) {
+        if (!ExpressionProfiler.isActive()) {
+            return run(frame);
+        }
+        ExpressionProfiler.Stats target = profile();
+        long start = ExpressionProfiler.begin(target);
+        boolean failed = true;
+        try {
+            Object result = run(frame);
+            failed = false;
+            return result;
+        } finally {
+            ExpressionProfiler.end(target, start, failed);
+        }
+    }
+
+    private Object run(VariableFrame frame) {
+        Binding current = enter();
+        if (current.kind() != Kind.EXPRESSION) {
+            return current.constant();
+        }
+        if (current.warmedUp) {
+            return MVEL.executeExpression(current.compiled(), frame);
+        }
+        try {
+            warmUp(current);
+            return MVEL.executeExpression(current.compiled(), frame);
+        } finally {
+            OptimizerFactory.clearThreadAccessorOptimizer();
+        }
+    }
+
+    /**
+     * 在多组上下文上顺序执行表达式。
+     *
+     * @param contexts 上下文变量列表
+     * @return 执行结果，与上下文一一对应
+     * @see #executeAll(Collection, boolean)
+     */
+    public List<Object> executeAll(Collection<? extends Map<String, ?>> contexts) {
+        return executeAll(contexts, false);
+    }
+
+    /**
+     * 在多组上下文上执行表达式。
+     * <p>
+     * 所有上下文共用同一个编译结果，每个线程只获取一个变量帧，处理下一个上下文前清空复用，
+     * 因此不会为每个上下文分配映射或解析工厂。表达式中的赋值只写入帧，不会写回传入的上下文。
+     * </p>
+     * <p>
+     * {@code parallel} 为 true、批量足够大且表达式调用的函数都声明为
+     * {@link com.mafuyu404.oelib.api.ExpressionFunction#threadSafe() 线程安全} 时，
+     * 批量被拆分到引擎的 ForkJoin 线程池中并行执行；否则在调用线程顺序执行。
+     * 并行执行时上下文中的对象同样会被多个线程访问，调用方需要保证其线程安全。
+     * </p>
+     *
+     * @param contexts 上下文变量列表
+     * @param parallel 是否允许并行执行
+     * @return 执行结果，与上下文一一对应
+     */
+    public List<Object> executeAll(Collection<? extends Map<String, ?>> contexts, boolean parallel) {
+        List<? extends Map<String, ?>> list = contexts instanceof List<? extends Map<String, ?>> l && l instanceof RandomAccess
+                ? l : new ArrayList<>(contexts);
+        Object[] results = new Object[list.size()];
+        if (results.length == 0) {
+            return List.of();
+        }
+
+        int parallelism = ExpressionEngine.getParallelism();
+        int chunks = Math.min(parallelism * 4, results.length / MIN_PARALLEL_CHUNK);
+        if (!parallel || parallelism < 2 || chunks < 2 || !isThreadSafe()) {
+            executeRange(list, results, 0, results.length);
+            return Arrays.asList(results);
+        }
+
+        // 首个上下文在调用线程执行，完成重新编译和访问器优化后再拆分
+        executeRange(list, results, 0, 1);
+        int size = (results.length - 1 + chunks - 1) / chunks;
+        ExpressionEngine.runParallel(() -> IntStream.range(0, chunks).parallel().forEach(chunk -> {
+            int from = 1 + chunk * size;
+            executeRange(list, results, from, Math.min(results.length, from + size));
+        }));
+        return Arrays.asList(results);
+    }
+
+    /**
+     * 在流中的每组上下文上执行表达式。
+     *
+     * @param contexts 上下文变量流
+     * @param parallel 是否允许并行执行
+     * @return 执行结果，按流的顺序排列
+     * @see #executeAll(Collection, boolean)
+     */
+    public List<Object> executeAll(Stream<? extends Map<String, ?>> contexts, boolean parallel) {
+        return executeAll(contexts.toList(), parallel);
+    }
+
+    private void executeRange(List<? extends Map<String, ?>> contexts, Object[] results, int from, int to) {
+        if (from >= to) {
+            return;
+        }
+        try (VariableFrame frame = VariableFrame.acquire()) {
+            for (int i = from; i < to; i++) {
+                frame.setAll(contexts.get(i));
+                results[i] = execute(frame);
+                frame.reset();
+            }
+        }
+    }
+
+    /**
+     * 检查表达式调用的函数是否都声明为线程安全。
+     *
+     * @return 是否可以在多个线程中同时执行
+     */
+    public boolean isThreadSafe() {
+        Binding current = current();
+        Boolean threadSafe = current.threadSafe;
+        if (threadSafe == null) {
+            threadSafe = current.kind() != Kind.EXPRESSION || owner.isThreadSafe(source);
+            current.threadSafe = threadSafe;
+        }
+        return threadSafe;
+    }
+
+    /**
+     * 执行表达式并返回布尔结果。
+     * <p>
+     * 强类型编译的简单布尔表达式直接以原始类型求值，不经过 MVEL，也不装箱。
+     * </p>
+     *
+     * @param frame 变量帧
+     * @return 执行结果
+     */
+    public boolean executeBoolean(VariableFrame frame) {
+        PrimitiveExpression primitive = primitive();
+        if (primitive != null && primitive.isBoolean()) {
+            try {
+                return primitive.evaluateBoolean(frame);
+            } catch (PrimitiveExpression.Fallback ignored) {
+                // 交给 MVEL 执行
+            }
+        }
+        return toBoolean(execute(frame));
+    }
+
+    /**
+     * 执行表达式并返回布尔结果。
+     *
+     * @param context 上下文变量
+     * @return 执行结果
+     */
+    public boolean executeBoolean(Map<String, Object> context) {
+        if (primitive() == null) {
+            return toBoolean(execute(context));
+        }
+        try (VariableFrame frame = VariableFrame.acquire()) {
+            frame.setAll(context);
+            return executeBoolean(frame);
+        }
+    }
+
+    /**
+     * 执行表达式并返回 double 结果。
+     * <p>
+     * 强类型编译的简单算术表达式直接以原始类型求值，不经过 MVEL，也不装箱。
+     * </p>
+     *
+     * @param frame 变量帧
+     * @return 执行结果
+     */
+    public double executeDouble(VariableFrame frame) {
+        PrimitiveExpression primitive = primitive();
+        if (primitive != null && primitive.isNumeric()) {
+            try {
+                return primitive.evaluateDouble(frame);
+            } catch (PrimitiveExpression.Fallback ignored) {
+                // 交给 MVEL 执行
+            }
+        }
+        return toNumber(execute(frame)).doubleValue();
+    }
+
+    /**
+     * 执行表达式并返回 double 结果。
+     *
+     * @param context 上下文变量
+     * @return 执行结果
+     */
+    public double executeDouble(Map<String, Object> context) {
+        if (primitive() == null) {
+            return toNumber(execute(context)).doubleValue();
+        }
+        try (VariableFrame frame = VariableFrame.acquire()) {
+            frame.setAll(context);
+            return executeDouble(frame);
+        }
+    }
+
+    /**
+     * 执行表达式并返回 int 结果。
+     * <p>
+     * 强类型编译的简单整数表达式直接以原始类型求值，不经过 MVEL，也不装箱。
+     * </p>
+     *
+     * @param frame 变量帧
+     * @return 执行结果
+     */
+    public int executeInt(VariableFrame frame) {
+        PrimitiveExpression primitive = primitive();
+        if (primitive != null && primitive.isInt()) {
+            try {
+                return primitive.evaluateInt(frame);
+            } catch (PrimitiveExpression.Fallback ignored) {
+                // 交给 MVEL 执行
+            }
+        }
+        return toNumber(execute(frame)).intValue();
+    }
+
+    /**
+     * 执行表达式并返回 int 结果。
+     *
+     * @param context 上下文变量
+     * @return 执行结果
+     */
+    public int executeInt(Map<String, Object> context) {
+        if (primitive() == null) {
+            return toNumber(execute(context)).intValue();
+        }
+        try (VariableFrame frame = VariableFrame.acquire()) {
+            frame.setAll(context);
+            return executeInt(frame);
+        }
+    }
+
+    /**
+     * 获取原始类型求值器。
+     * <p>
+     * 性能分析开启时返回 null，使每次求值都经过 MVEL 执行并被记录。
+     * </p>
+     */
+    private PrimitiveExpression primitive() {
+        return ExpressionProfiler.isActive() ? null : current().primitive();
+    }
+
+    private boolean toBoolean(Object result) {
+        if (result instanceof Boolean bool) {
+            return bool;
+        }
+        if (result == null) {
+            throw new NullPointerException("Expression returned null: " + source);
+        }
+        return DataConversion.convert(result, Boolean.class);
+    }
+
+    private Number toNumber(Object result) {
+        if (result instanceof Number number) {
+            return number;
+        }
+        if (result == null) {
+            throw new NullPointerException("Expression returned null: " + source);
+        }
+        return DataConversion.convert(result, Double.class);
+    }
+
+    /**
+     * 获取结果字符串对应的通配符匹配器。
+     * <p>
+     * 条件表达式的结果通常是常量，因此在句柄上缓存最近一次的匹配器，
+     * 结果不变时无需查找全局缓存。
+     * </p>
+     *
+     * @param pattern 表达式结果
+     * @return 通配符匹配器
+     */
+    GlobMatcher glob(String pattern) {
+        GlobMatcher matcher = glob;
+        if (matcher == null || !matcher.pattern().equals(pattern)) {
+            matcher = GlobMatcher.of(pattern);
+            glob = matcher;
+        }
+        return matcher;
+    }
+
+    /**
+     * 将条件或变量的原始值解析为最终值，不通过异常判断字面量。
+     * <p>
+     * 无法编译的值以及引用了帧中不存在的变量的表达式都视为字面量，返回原始字符串。
+     * </p>
+     *
+     * @param raw   调用方传入的原始字符串
+     * @param frame 变量帧
+     * @return 解析结果
+     */
+    Object resolve(String raw, VariableFrame frame) {
+        Binding current = current();
+        switch (current.kind()) {
+            case LITERAL:
+                return raw;
+            case CONSTANT:
+                return current.constant();
+            default:
+                for (int slot : current.slots()) {
+                    if (!frame.contains(slot)) {
+                        return raw;
+                    }
+                }
+                return execute(frame);
+        }
+    }
+
+    private ExpressionProfiler.Stats profile() {
+        ExpressionProfiler.Stats cached = stats;
+        ExpressionProfiler.Stats current = ExpressionProfiler.stats(source, cached);
+        if (current != cached) {
+            stats = current;
+        }
+        return current;
+    }
+
+    Binding current() {
+        Binding current = binding;
+        if (current.generation() != owner.getGeneration()) {
+            current = owner.rebind(source, signature, current);
+            binding = current;
+        }
+        return current;
+    }
+
+    private Binding enter() {
+        Binding current = current();
+        if (current.kind() == Kind.LITERAL) {
+            throw current.error();
+        }
+        if (current.tier() == Tier.BASELINE && current.kind() == Kind.EXPRESSION) {
+            int threshold = ExpressionEngine.getOptimizationThreshold();
+            // 计数允许丢失少量并发更新，只需大致达到阈值即可
+            if (threshold > 0 && ++current.invocations == threshold) {
+                ExpressionEngine.scheduleOptimization(this, current);
+            }
+        }
+        return current;
+    }
+
+    /**
+     * MVEL 在编译结果首次执行时为各节点选择访问器，之后不再改变。
+     * 因此只需在首次执行前为当前线程指定优化器。
+     */
+    private static void warmUp(Binding current) {
+        current.warmedUp = true;
+        Class<? extends AccessorOptimizer> optimizer = current.tier().optimizer;
+        if (optimizer != null) {
+            OptimizerFactory.setThreadAccessorOptimizer(optimizer);
+        }
+    }
+
+    /**
+     * 获取句柄所属的引擎实例。
+     *
+     * @return 引擎实例
+     */
+    ExpressionNamespace owner() {
+        return owner;
+    }
+
+    /**
+     * 获取强类型编译使用的类型签名。
+     *
+     * @return 类型签名，普通编译时为 null
+     */
+    TypeSignature signature() {
+        return signature;
+    }
+
+    /**
+     * 用新的编译结果替换旧结果，旧结果已被替换时放弃。
+     */
+    boolean replace(Binding expected, Binding replacement) {
+        return BINDING.compareAndSet(this, expected, replacement);
+    }
+
+    @Override
+    public String toString() {
+        return "CompiledExpression[" + source + "]";
+    }
+
+    /**
+     * 值的分类，在编译时确定并随编译结果缓存。
+     */
+    public enum Kind {
+        /**
+         * 无法编译，按原始字符串处理。
+         */
+        LITERAL,
+        /**
+         * 不引用任何变量的字面量表达式，编译时即已求值。
+         */
+        CONSTANT,
+        /**
+         * 需要在运行时求值的表达式。
+         */
+        EXPRESSION
+    }
+
+    /**
+     * 执行层级。
+     */
+    public enum Tier {
+        /**
+         * 未启用分层优化，使用 MVEL 默认优化器。
+         */
+        DEFAULT(null),
+        /**
+         * 基础层级，使用反射访问器，编译开销最低。
+         */
+        BASELINE(ReflectiveAccessorOptimizer.class),
+        /**
+         * 优化层级，使用 ASM 生成的字节码访问器。
+         */
+        OPTIMIZED(ASMAccessorOptimizer.class);
+
+        private final Class<? extends AccessorOptimizer> optimizer;
+
+        Tier(Class<? extends AccessorOptimizer> optimizer) {
+            this.optimizer = optimizer;
+        }
+    }
+
+    /**
+     * 某一代引擎状态下的编译结果。
+     */
+    static final class Binding {
+        private static final int[] NO_SLOTS = new int[0];
+
+        private final Kind kind;
+        private final Serializable compiled;
+        private final Object constant;
+        private final RuntimeException error;
+        private final Set<String> variables;
+        private final int[] slots;
+        private final Class<?> resultType;
+        private final Set<String> functions;
+        private final Tier tier;
+        private final PrimitiveExpression primitive;
+        private volatile int generation;
+        private volatile boolean warmedUp;
+        private volatile Boolean threadSafe;
+        private int invocations;
+
+        private Binding(Kind kind, Serializable compiled, Object constant, RuntimeException error,
+                        Set<String> variables, int[] slots, Class<?> resultType, int generation,
+                        Set<String> functions, Tier tier, PrimitiveExpression primitive) {
+            this.kind = kind;
+            this.compiled = compiled;
+            this.constant = constant;
+            this.error = error;
+            this.variables = variables;
+            this.slots = slots;
+            this.resultType = resultType;
+            this.generation = generation;
+            this.functions = functions;
+            this.tier = tier;
+            this.primitive = primitive;
+            this.warmedUp = tier.optimizer == null;
+        }
+
+        static Binding expression(Serializable compiled, Set<String> variables, int[] slots, Class<?> resultType,
+                                  int generation, Set<String> functions, Tier tier, PrimitiveExpression primitive) {
+            return new Binding(Kind.EXPRESSION, compiled, null, null, variables, slots, resultType, generation,
+                    functions, tier, primitive);
+        }
+
+        static Binding constant(Serializable compiled, Object value, int generation, Set<String> functions, Tier tier) {
+            Class<?> type = value != null ? value.getClass() : Object.class;
+            return new Binding(Kind.CONSTANT, compiled, value, null, Set.of(), NO_SLOTS, type, generation, functions, tier,
+                    null);
+        }
+
+        static Binding literal(RuntimeException error, int generation, Set<String> functions, Tier tier) {
+            return new Binding(Kind.LITERAL, null, null, error, Set.of(), NO_SLOTS, String.class, generation,
+                    functions, tier, null);
+        }
+
+        Kind kind() {
+            return kind;
+        }
+
+        Object constant() {
+            return constant;
+        }
+
+        RuntimeException error() {
+            return error;
+        }
+
+        int[] slots() {
+            return slots;
+        }
+
+        Serializable compiled() {
+            return compiled;
+        }
+
+        Set<String> variables() {
+            return variables;
+        }
+
+        Class<?> resultType() {
+            return resultType;
+        }
+
+        int generation() {
+            return generation;
+        }
+
+        /**
+         * 表达式调用的函数名，包括编译期折叠掉的调用。
+         */
+        Set<String> functions() {
+            return functions;
+        }
+
+        /**
+         * 调用的函数都没有变化时，将编译结果推进到新的代数继续使用。
+         */
+        void advance(int generation) {
+            this.generation = generation;
+        }
+
+        Tier tier() {
+            return tier;
+        }
+
+        /**
+         * 强类型编译的简单表达式对应的原始类型求值器，不适用时为 null。
+         */
+        PrimitiveExpression primitive() {
+            return primitive;
+        }
+    }
+}
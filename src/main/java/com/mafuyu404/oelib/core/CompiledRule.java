@@ -0,0 +1,152 @@
+package com.mafuyu404.oelib.core;
+
+import com.mafuyu404.oelib.OElib;
+
+import java.util.*;
+
+/**
+ * 已编译的规则。
+ * <p>
+ * 将一个数据条目的变量、条件和动作一次性编译为单个可执行单元，通过 {@link ExpressionNamespace#compileRule}
+ * 或 {@link ExpressionEngine#compileRule} 获取，所有表达式都在所属的引擎实例中编译和求值。
+ * 执行结果与在同一实例上依次调用 {@link ExpressionNamespace#createContext}、{@link ExpressionNamespace#checkConditions}
+ * 和 {@link ExpressionNamespace#executeActions} 相同，但：
+ * </p>
+ * <ul>
+ *     <li>所有表达式在编译时解析为句柄，执行时不再查找缓存；</li>
+ *     <li>变量直接写入变量帧的槽位，不创建中间映射；</li>
+ *     <li>变量在条件或动作首次读取时才求值，条件不满足时未读取的变量不会求值。</li>
+ * </ul>
+ * <p>
+ * 规则句柄是不可变的，可以在多个线程间共享；引擎重新初始化后，变量的引用关系在下一次执行时重新分析。
+ * </p>
+ */
+public final class CompiledRule {
+
+    private final ExpressionNamespace owner;
+    private final String[] conditionSources;
+    private final int[] conditionSlots;
+    private final CompiledExpression[] conditions;
+    private final String[] actionSources;
+    private final CompiledExpression[] actions;
+    private final Map<String, String> varMap;
+    private final Map<String, String> conditionMap;
+    private final List<String> actionList;
+    private volatile VariablePlan plan;
+
+    CompiledRule(ExpressionNamespace owner, Map<String, String> vars, Map<String, String> conditions, List<String> actions) {
+        this.owner = owner;
+        this.varMap = vars != null ? new LinkedHashMap<>(vars) : Map.of();
+        this.conditionMap = conditions != null ? new LinkedHashMap<>(conditions) : Map.of();
+        this.actionList = actions != null ? List.copyOf(actions) : List.of();
+
+        this.plan = VariablePlan.build(owner, varMap);
+
+        int conditionCount = conditionMap.size();
+        this.conditionSources = new String[conditionCount];
+        this.conditionSlots = new int[conditionCount];
+        this.conditions = new CompiledExpression[conditionCount];
+        int index = 0;
+        for (Map.Entry<String, String> condition : conditionMap.entrySet()) {
+            conditionSources[index] = condition.getValue();
+            conditionSlots[index] = VariableFrame.slot(condition.getKey());
+            this.conditions[index] = owner.handle(condition.getValue());
+            index++;
+        }
+
+        this.actionSources = actionList.toArray(new String[0]);
+        this.actions = new CompiledExpression[actionSources.length];
+        for (int i = 0; i < actionSources.length; i++) {
+            this.actions[i] = owner.handle(actionSources[i]);
+        }
+    }
+
+    /**
+     * 执行规则：求值变量，检查条件，条件全部满足时执行动作。
+     *
+     * @param inputs 外部输入变量，可以为 null
+     * @return 条件是否全部满足
+     */
+    public boolean execute(Map<String, Object> inputs) {
+        try (VariableFrame frame = VariableFrame.acquire()) {
+            frame.setAll(inputs);
+            return execute(frame);
+        }
+    }
+
+    /**
+     * 在变量帧上执行规则。
+     * <p>
+     * 帧中应预先写入外部输入变量。变量和动作的结果会写入该帧。
+     * </p>
+     *
+     * @param frame 变量帧
+     * @return 条件是否全部满足
+     */
+    public boolean execute(VariableFrame frame) {
+        if (!test(frame)) {
+            return false;
+        }
+        run(frame);
+        return true;
+    }
+
+    /**
+     * 在变量帧上求值变量并检查条件，不执行动作。
+     * <p>
+     * 变量以延迟求值的形式写入帧，之后读取时才会求值。
+     * </p>
+     *
+     * @param frame 变量帧
+     * @return 条件是否全部满足
+     */
+    public boolean test(VariableFrame frame) {
+        if (!owner.isInitialized()) {
+            // 未初始化时不绑定函数，沿用逐项求值的行为
+            owner.createContext(varMap, frame);
+            return owner.checkConditions(conditionMap, frame);
+        }
+
+        plan().bind(frame);
+        for (int i = 0; i < conditions.length; i++) {
+            CompiledExpression compiled = conditions[i];
+            Object expectedValue = ExpressionNamespace.resolveCondition(conditionSources[i], compiled, frame);
+            if (!ExpressionNamespace.matchesCondition(expectedValue, frame.get(conditionSlots[i]), compiled)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void run(VariableFrame frame) {
+        if (!owner.isInitialized()) {
+            owner.executeActions(actionList, frame.toMap());
+            return;
+        }
+        for (int i = 0; i < actions.length; i++) {
+            try {
+                actions[i].execute(frame);
+            } catch (Exception e) {
+                OElib.LOGGER.error("Failed to execute action: {}", actionSources[i], e);
+            }
+        }
+    }
+
+    /**
+     * 获取变量的求值计划，引擎代数变化后重新分析。
+     */
+    private VariablePlan plan() {
+        VariablePlan current = plan;
+        if (current.generation() != owner.getGeneration()) {
+            current = VariablePlan.build(owner, varMap);
+            plan = current;
+        }
+        return current;
+    }
+
+    @Override
+    public String toString() {
+        return "CompiledRule[vars=" + varMap.size() + ", conditions=" + conditions.length
+                + ", actions=" + actions.length + "]";
+    }
+}
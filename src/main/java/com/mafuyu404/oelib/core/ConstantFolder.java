@@ -0,0 +1,312 @@
+package com.mafuyu404.oelib.core;
+
+import com.mafuyu404.oelib.api.ExpressionFunction;
+import com.mafuyu404.oelib.util.ExpressionTokenizer;
+import com.mafuyu404.oelib.util.ExpressionTokenizer.Token;
+import com.mafuyu404.oelib.util.ExpressionTokenizer.TokenType;
+import org.mvel2.MVEL;
+import org.mvel2.ParserConfiguration;
+import org.mvel2.ParserContext;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 编译期常量折叠。
+ * <p>
+ * 将参数全部为字面量的可折叠函数调用（见 {@link ExpressionFunction.Stability#isFoldable()}）
+ * 替换为调用结果，然后化简顶层的 {@code &&} / {@code ||} 链中的布尔常量。
+ * </p>
+ */
+final class ConstantFolder {
+
+    private static final int MAX_PASSES = 8;
+
+    private ConstantFolder() {
+    }
+
+    /**
+     * 折叠表达式中的常量函数调用。
+     *
+     * @param expression    表达式字符串
+     * @param functions     已注册的函数
+     * @param configuration 用于对调用求值的解析配置
+     * @return 折叠后的表达式，无可折叠内容时返回原字符串
+     */
+    static String fold(String expression, Map<String, Method> functions, ParserConfiguration configuration) {
+        if (functions.isEmpty() || expression.indexOf('(') < 0) {
+            return expression;
+        }
+
+        String current = expression;
+        for (int pass = 0; pass < MAX_PASSES; pass++) {
+            String folded = foldCalls(current, functions, configuration);
+            if (folded.equals(current)) {
+                break;
+            }
+            current = folded;
+        }
+
+        return current.equals(expression) ? expression : simplify(current);
+    }
+
+    private static String foldCalls(String expression, Map<String, Method> functions, ParserConfiguration configuration) {
+        List<Token> tokens = ExpressionTokenizer.tokenize(expression);
+        StringBuilder result = null;
+        int copied = 0;
+
+        for (int i = 0; i + 1 < tokens.size(); i++) {
+            Token name = tokens.get(i);
+            if (name.type() != TokenType.IDENTIFIER || !tokens.get(i + 1).is('(')) {
+                continue;
+            }
+            if (i > 0 && tokens.get(i - 1).is('.')) {
+                // 对象上的方法调用
+                continue;
+            }
+
+            Method method = functions.get(name.text());
+            if (method == null || !method.getAnnotation(ExpressionFunction.class).stability().isFoldable()) {
+                continue;
+            }
+
+            int close = literalArgumentsEnd(tokens, i + 2);
+            if (close < 0) {
+                continue;
+            }
+
+            String call = expression.substring(name.start(), tokens.get(close).end());
+            String literal = evaluateToLiteral(call, configuration);
+            if (literal == null) {
+                continue;
+            }
+
+            if (result == null) {
+                result = new StringBuilder(expression.length());
+            }
+            result.append(expression, copied, name.start()).append(literal);
+            copied = tokens.get(close).end();
+            i = close;
+        }
+
+        if (result == null) {
+            return expression;
+        }
+        return result.append(expression, copied, expression.length()).toString();
+    }
+
+    /**
+     * 检查从 {@code start} 开始的参数列表是否全部为字面量。
+     *
+     * @return 右括号的下标，不满足时返回 -1
+     */
+    private static int literalArgumentsEnd(List<Token> tokens, int start) {
+        boolean expectArgument = true;
+        for (int i = start; i < tokens.size(); i++) {
+            Token token = tokens.get(i);
+            if (token.is(')')) {
+                return expectArgument && i != start ? -1 : i;
+            }
+            if (expectArgument) {
+                int end = literalEnd(tokens, i);
+                if (end < 0) {
+                    return -1;
+                }
+                i = end;
+                expectArgument = false;
+            } else if (token.is(',')) {
+                expectArgument = true;
+            } else {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 匹配单个字面量参数，允许负号和一层括号，例如 {@code -5} 或 {@code (-5)}。
+     *
+     * @return 字面量最后一个词法单元的下标，不匹配时返回 -1
+     */
+    private static int literalEnd(List<Token> tokens, int index) {
+        if (tokens.get(index).is('(')) {
+            int inner = index + 1 < tokens.size() ? literalEnd(tokens, index + 1) : -1;
+            return inner >= 0 && inner + 1 < tokens.size() && tokens.get(inner + 1).is(')') ? inner + 1 : -1;
+        }
+        if (tokens.get(index).is('-')) {
+            return index + 1 < tokens.size() && tokens.get(index + 1).type() == TokenType.NUMBER ? index + 1 : -1;
+        }
+        return isLiteral(tokens.get(index)) ? index : -1;
+    }
+
+    private static boolean isLiteral(Token token) {
+        return switch (token.type()) {
+            case STRING, NUMBER -> true;
+            case IDENTIFIER -> token.text().equals("true") || token.text().equals("false") || token.text().equals("null");
+            default -> false;
+        };
+    }
+
+    private static String evaluateToLiteral(String call, ParserConfiguration configuration) {
+        Object value;
+        try {
+            value = MVEL.executeExpression(MVEL.compileExpression(call, new ParserContext(configuration)), new HashMap<>());
+        } catch (Exception e) {
+            // 折叠失败时保留原调用，错误留到运行期按原有逻辑处理
+            return null;
+        }
+
+        if (value == null) {
+            return "null";
+        }
+        if (value instanceof Boolean bool) {
+            return bool.toString();
+        }
+        if (value instanceof String str) {
+            return "'" + str.replace("\\", "\\\\").replace("'", "\\'") + "'";
+        }
+        if (value instanceof Integer number) {
+            return number < 0 ? "(" + number + ")" : number.toString();
+        }
+        if (value instanceof Long number) {
+            return number < 0 ? "(" + number + "L)" : number + "L";
+        }
+        return null;
+    }
+
+    /**
+     * 化简顶层由单一逻辑运算符连接的布尔常量。
+     * <p>
+     * {@code a && false && b} 化简为 {@code a && false}，{@code true && a} 化简为 {@code a}；
+     * {@code ||} 同理。常量之前的操作数保留，以免丢弃它们的副作用。
+     * </p>
+     */
+    static String simplify(String expression) {
+        return simplifyChain(simplifyGroups(expression));
+    }
+
+    /**
+     * 化简括号分组内部的逻辑链，函数调用的参数列表除外。
+     */
+    private static String simplifyGroups(String expression) {
+        List<Token> tokens = ExpressionTokenizer.tokenize(expression);
+        StringBuilder result = null;
+        int copied = 0;
+
+        for (int i = 0; i < tokens.size(); i++) {
+            if (!tokens.get(i).is('(') || (i > 0 && tokens.get(i - 1).type() == TokenType.IDENTIFIER)) {
+                continue;
+            }
+            int close = matchingParenthesis(tokens, i);
+            if (close < 0) {
+                return expression;
+            }
+            if (close == i + 1) {
+                continue;
+            }
+
+            String inner = expression.substring(tokens.get(i + 1).start(), tokens.get(close - 1).end());
+            String simplified = simplify(inner);
+            if (!simplified.equals(inner)) {
+                if (result == null) {
+                    result = new StringBuilder(expression.length());
+                }
+                boolean constant = simplified.equals("true") || simplified.equals("false");
+                result.append(expression, copied, tokens.get(i).start())
+                        .append(constant ? simplified : "(" + simplified + ")");
+                copied = tokens.get(close).end();
+            }
+            i = close;
+        }
+
+        if (result == null) {
+            return expression;
+        }
+        return result.append(expression, copied, expression.length()).toString();
+    }
+
+    private static int matchingParenthesis(List<Token> tokens, int open) {
+        int depth = 0;
+        for (int i = open; i < tokens.size(); i++) {
+            if (tokens.get(i).is('(')) {
+                depth++;
+            } else if (tokens.get(i).is(')') && --depth == 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static String simplifyChain(String expression) {
+        List<Token> tokens = ExpressionTokenizer.tokenize(expression);
+        List<int[]> operands = new ArrayList<>();
+        char operator = 0;
+        int depth = 0;
+        int operandStart = 0;
+
+        for (int i = 0; i < tokens.size(); i++) {
+            Token token = tokens.get(i);
+            if (token.is('(') || token.is('[') || token.is('{')) {
+                depth++;
+            } else if (token.is(')') || token.is(']') || token.is('}')) {
+                depth--;
+            } else if (depth == 0) {
+                if (token.is(';') || token.is('?') || token.is(':')) {
+                    return expression;
+                }
+                if (token.is('=') && !isComparison(tokens, i)) {
+                    return expression;
+                }
+                if ((token.is('&') || token.is('|')) && i + 1 < tokens.size()
+                        && tokens.get(i + 1).is(token.text().charAt(0)) && !tokens.get(i + 1).precededBySpace()) {
+                    char current = token.text().charAt(0);
+                    if (operator != 0 && operator != current) {
+                        return expression;
+                    }
+                    operator = current;
+                    operands.add(new int[]{operandStart, i - 1});
+                    operandStart = i + 2;
+                    i++;
+                }
+            }
+        }
+
+        if (operator == 0) {
+            return expression;
+        }
+        operands.add(new int[]{operandStart, tokens.size() - 1});
+
+        String identity = operator == '&' ? "true" : "false";
+        String absorbing = operator == '&' ? "false" : "true";
+        List<String> kept = new ArrayList<>();
+        for (int[] range : operands) {
+            String text = range[0] > range[1] ? "" : expression.substring(tokens.get(range[0]).start(), tokens.get(range[1]).end());
+            if (text.equals(identity)) {
+                continue;
+            }
+            kept.add(text);
+            if (text.equals(absorbing)) {
+                break;
+            }
+        }
+
+        if (kept.isEmpty()) {
+            return identity;
+        }
+        return String.join(operator == '&' ? " && " : " || ", kept);
+    }
+
+    private static boolean isComparison(List<Token> tokens, int index) {
+        if (index + 1 < tokens.size() && tokens.get(index + 1).is('=') && !tokens.get(index + 1).precededBySpace()) {
+            return true;
+        }
+        if (index > 0 && !tokens.get(index).precededBySpace()) {
+            Token previous = tokens.get(index - 1);
+            return previous.is('=') || previous.is('!') || previous.is('<') || previous.is('>');
+        }
+        return false;
+    }
+}
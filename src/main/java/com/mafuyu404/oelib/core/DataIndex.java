@@ -0,0 +1,283 @@
+package com.mafuyu404.oelib.core;
+
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import net.minecraft.resources.ResourceLocation;
+
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+import java.util.function.ToLongFunction;
+
+/**
+ * 数据类型的二级索引声明。
+ * <p>
+ * 通过 {@link DataManager#addIndex} 注册后，每次重载或同步数据时都会按声明构建不可变的哈希索引，
+ * 随数据快照一起发布，之后可以通过 {@link DataManager#lookup} 按键在常数时间内取得数据，
+ * 代替遍历 {@link DataManager#getDataList()}。
+ * </p>
+ * <p>
+ * 整数和长整数键的索引使用原始类型的哈希表，查询时不装箱。
+ * 一个数据可以有多个键，也可以没有键（提取函数返回 null），没有键的数据不进入索引。
+ * 同一个键下的数据按 {@link DataManager#getDataList()} 的顺序排列。
+ * </p>
+ * <pre>{@code
+ * public static final DataIndex<Replacement, String> BY_ITEM =
+ *         DataIndex.multi("item", Replacement::matchItems);
+ *
+ * manager.addIndex(BY_ITEM);
+ * List<Replacement> replacements = manager.lookup(BY_ITEM, "minecraft:stone");
+ * }</pre>
+ *
+ * @param <T> 数据类型
+ * @param <K> 键类型
+ */
+public final class DataIndex<T, K> {
+
+    private final String name;
+    private final KeyType keyType;
+    private final Extractor<T, K> extractor;
+
+    private DataIndex(String name, KeyType keyType, Extractor<T, K> extractor) {
+        this.name = Objects.requireNonNull(name, "name");
+        this.keyType = keyType;
+        this.extractor = extractor;
+    }
+
+    /**
+     * 创建每个数据最多有一个键的索引。
+     *
+     * @param name 索引名称，用于日志
+     * @param key  获取数据键的函数，返回 null 表示不索引该数据
+     * @param <T>  数据类型
+     * @param <K>  键类型
+     * @return 索引声明
+     */
+    public static <T, K> DataIndex<T, K> of(String name, Function<? super T, ? extends K> key) {
+        return new DataIndex<>(name, KeyType.OBJECT, (location, data, sink) -> {
+            K value = key.apply(data);
+            if (value != null) {
+                sink.accept(value);
+            }
+        });
+    }
+
+    /**
+     * 创建每个数据可以有多个键的索引。
+     *
+     * @param name 索引名称，用于日志
+     * @param keys 获取数据所有键的函数，可以返回 null
+     * @param <T>  数据类型
+     * @param <K>  键类型
+     * @return 索引声明
+     */
+    public static <T, K> DataIndex<T, K> multi(String name, Function<? super T, ? extends Collection<? extends K>> keys) {
+        return new DataIndex<>(name, KeyType.OBJECT, (location, data, sink) -> {
+            Collection<? extends K> values = keys.apply(data);
+            if (values != null) {
+                for (K value : values) {
+                    if (value != null) {
+                        sink.accept(value);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * 创建按资源位置命名空间分组的索引。
+     *
+     * @param name 索引名称，用于日志
+     * @param <T>  数据类型
+     * @return 索引声明
+     */
+    public static <T> DataIndex<T, String> byNamespace(String name) {
+        return new DataIndex<>(name, KeyType.OBJECT, (location, data, sink) -> sink.accept(location.getNamespace()));
+    }
+
+    /**
+     * 创建整数键的索引，使用 {@link DataManager#lookup(DataIndex, int)} 查询时不装箱。
+     *
+     * @param name 索引名称，用于日志
+     * @param key  获取数据键的函数
+     * @param <T>  数据类型
+     * @return 索引声明
+     */
+    public static <T> DataIndex<T, Integer> ofInt(String name, ToIntFunction<? super T> key) {
+        return new DataIndex<>(name, KeyType.INT, (location, data, sink) -> sink.accept(key.applyAsInt(data)));
+    }
+
+    /**
+     * 创建长整数键的索引，使用 {@link DataManager#lookup(DataIndex, long)} 查询时不装箱。
+     *
+     * @param name 索引名称，用于日志
+     * @param key  获取数据键的函数
+     * @param <T>  数据类型
+     * @return 索引声明
+     */
+    public static <T> DataIndex<T, Long> ofLong(String name, ToLongFunction<? super T> key) {
+        return new DataIndex<>(name, KeyType.LONG, (location, data, sink) -> sink.accept(key.applyAsLong(data)));
+    }
+
+    /**
+     * 获取索引名称。
+     *
+     * @return 索引名称
+     */
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String toString() {
+        return "DataIndex[" + name + "]";
+    }
+
+    /**
+     * 按声明为一组数据构建索引表。
+     *
+     * @param entries 按迭代顺序排列的数据
+     * @return 不可变的索引表
+     */
+    Table<T> build(List<Map<ResourceLocation, T>> entries) {
+        Map<K, List<T>> grouped = new HashMap<>();
+        for (Map<ResourceLocation, T> part : entries) {
+            for (Map.Entry<ResourceLocation, T> entry : part.entrySet()) {
+                T data = entry.getValue();
+                extractor.extract(entry.getKey(), data, key -> {
+                    List<T> list = grouped.computeIfAbsent(key, k -> new ArrayList<>());
+                    // 同一个数据的多个键可能相同
+                    if (list.isEmpty() || list.get(list.size() - 1) != data) {
+                        list.add(data);
+                    }
+                });
+            }
+        }
+
+        return switch (keyType) {
+            case OBJECT -> {
+                Map<Object, List<T>> table = new HashMap<>(grouped.size() * 4 / 3 + 1);
+                grouped.forEach((key, list) -> table.put(key, List.copyOf(list)));
+                yield new ObjectTable<>(table);
+            }
+            case INT -> {
+                Int2ObjectOpenHashMap<List<T>> table = new Int2ObjectOpenHashMap<>();
+                grouped.forEach((key, list) -> table.put(((Number) key).intValue(), List.copyOf(list)));
+                table.trim();
+                yield new IntTable<>(table);
+            }
+            case LONG -> {
+                Long2ObjectOpenHashMap<List<T>> table = new Long2ObjectOpenHashMap<>();
+                grouped.forEach((key, list) -> table.put(((Number) key).longValue(), List.copyOf(list)));
+                table.trim();
+                yield new LongTable<>(table);
+            }
+        };
+    }
+
+    private enum KeyType {
+        OBJECT,
+        INT,
+        LONG
+    }
+
+    /**
+     * 从单个数据提取键。
+     */
+    @FunctionalInterface
+    private interface Extractor<T, K> {
+        void extract(ResourceLocation location, T data, Consumer<K> sink);
+    }
+
+    /**
+     * 构建完成的索引表。
+     * <p>
+     * 对象键的索引表也接受原始类型的键，反之亦然，查询结果不存在时返回空列表。
+     * </p>
+     */
+    interface Table<T> {
+        List<T> get(Object key);
+
+        List<T> get(int key);
+
+        List<T> get(long key);
+
+        int keyCount();
+    }
+
+    private record ObjectTable<T>(Map<Object, List<T>> table) implements Table<T> {
+        @Override
+        public List<T> get(Object key) {
+            return table.getOrDefault(key, List.of());
+        }
+
+        @Override
+        public List<T> get(int key) {
+            return get((Object) key);
+        }
+
+        @Override
+        public List<T> get(long key) {
+            return get((Object) key);
+        }
+
+        @Override
+        public int keyCount() {
+            return table.size();
+        }
+    }
+
+    private record IntTable<T>(Int2ObjectOpenHashMap<List<T>> table) implements Table<T> {
+        @Override
+        public List<T> get(Object key) {
+            // 只接受整数类型的键，Long 按 get(long) 检查范围，避免截断后命中其他键
+            if (key instanceof Integer || key instanceof Short || key instanceof Byte) {
+                return get(((Number) key).intValue());
+            }
+            return key instanceof Long value ? get(value.longValue()) : List.of();
+        }
+
+        @Override
+        public List<T> get(int key) {
+            List<T> result = table.get(key);
+            return result != null ? result : List.of();
+        }
+
+        @Override
+        public List<T> get(long key) {
+            return key == (int) key ? get((int) key) : List.of();
+        }
+
+        @Override
+        public int keyCount() {
+            return table.size();
+        }
+    }
+
+    private record LongTable<T>(Long2ObjectOpenHashMap<List<T>> table) implements Table<T> {
+        @Override
+        public List<T> get(Object key) {
+            if (key instanceof Long || key instanceof Integer || key instanceof Short || key instanceof Byte) {
+                return get(((Number) key).longValue());
+            }
+            return List.of();
+        }
+
+        @Override
+        public List<T> get(int key) {
+            return get((long) key);
+        }
+
+        @Override
+        public List<T> get(long key) {
+            List<T> result = table.get(key);
+            return result != null ? result : List.of();
+        }
+
+        @Override
+        public int keyCount() {
+            return table.size();
+        }
+    }
+}
@@ -3,6 +3,7 @@ package com.mafuyu404.oelib.core;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.JsonElement;
+import com.google.gson.JsonPrimitive;
 import com.mafuyu404.oelib.OElib;
 import com.mafuyu404.oelib.api.DataDriven;
 import com.mafuyu404.oelib.api.DataValidator;
@@ -24,8 +25,16 @@ import net.minecraftforge.fml.common.Mod;
 import net.minecraftforge.server.ServerLifecycleHooks;
 
 import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 /**
  * 通用数据管理器。
@@ -46,9 +55,14 @@ public class DataManager<T> extends SimpleJsonResourceReloadListener {
     private final DataDriven annotation;
     private final Codec<T> codec;
     private final DataValidator<T> validator;
-    private final Map<ResourceLocation, T> loadedData = new ConcurrentHashMap<>();
-    private final Map<ResourceLocation, T> deferredData = new ConcurrentHashMap<>();
-    private final Map<String, Set<T>> cache = new ConcurrentHashMap<>();
+    private final Object cacheLock = new Object();
+    private final List<DataIndex<T, ?>> indexes = new CopyOnWriteArrayList<>();
+    private volatile DataSnapshot<T> snapshot = DataSnapshot.empty();
+    private DataSnapshot.Builder<T> building;
+    private volatile Function<T, Map<String, String>> conditionExtractor;
+    private volatile RuleIndex<T> ruleIndex;
+    private volatile Prepared<T> prepared;
+    private volatile Map<ResourceLocation, LoadedFile<T>> previousFiles = Map.of();
 
     private DataManager(Class<T> dataClass) {
         super(GSON, getFolder(dataClass));
@@ -86,13 +100,28 @@ public class DataManager<T> extends SimpleJsonResourceReloadListener {
         return (DataManager<T>) managers.get(dataClass);
     }
 
+    /**
+     * 获取当前数据快照。
+     * <p>
+     * 重载期间返回上一次完整加载的快照，重载完成后整体替换，读取快照无需加锁。
+     * </p>
+     *
+     * @return 数据快照
+     */
+    public DataSnapshot<T> getSnapshot() {
+        return snapshot;
+    }
+
     /**
      * 获取所有已加载的数据。
+     * <p>
+     * 返回当前快照的只读视图，不复制数据；重载后需要重新获取。
+     * </p>
      *
-     * @return 数据映射的副本
+     * @return 只读数据映射
      */
     public Map<ResourceLocation, T> getAllData() {
-        return new HashMap<>(loadedData);
+        return snapshot.data();
     }
 
     /**
@@ -102,18 +131,47 @@ public class DataManager<T> extends SimpleJsonResourceReloadListener {
      * @return 数据，如果不存在则返回 null
      */
     public T getData(ResourceLocation location) {
-        return loadedData.get(location);
+        return snapshot.data().get(location);
     }
 
     /**
      * 获取所有数据的列表。
+     * <p>
+     * 列表在每次重载时生成一次，之后的调用返回同一个只读实例，包括延迟验证的数据。
+     * </p>
      *
-     * @return 数据列表
+     * @return 只读数据列表
      */
     public List<T> getDataList() {
-        List<T> result = new ArrayList<>(loadedData.values());
-        result.addAll(deferredData.values());
-        return result;
+        return snapshot.values();
+    }
+
+    /**
+     * 按 {@link #getDataList()} 的顺序遍历所有数据，不复制数据。
+     *
+     * @param action 对每个数据执行的操作
+     */
+    public void forEach(Consumer<? super T> action) {
+        snapshot.forEach(action);
+    }
+
+    /**
+     * 获取所有数据的分割迭代器，可用于并行遍历。
+     *
+     * @return 分割迭代器
+     */
+    public Spliterator<T> spliterator() {
+        return snapshot.spliterator();
+    }
+
+    /**
+     * 获取所有数据的流。
+     *
+     * @param parallel 是否并行
+     * @return 数据流
+     */
+    public Stream<T> stream(boolean parallel) {
+        return snapshot.stream(parallel);
     }
 
     /**
@@ -129,18 +187,36 @@ public class DataManager<T> extends SimpleJsonResourceReloadListener {
         if (!annotation.enableCache()) {
             throw new UnsupportedOperationException("Cache is disabled for " + dataClass.getSimpleName());
         }
-        return cache.getOrDefault(cacheKey, Collections.emptySet());
+        return snapshot.cached(cacheKey);
     }
 
     /**
      * 添加数据到缓存。
+     * <p>
+     * 重载期间写入正在构建的快照，否则复制当前缓存并发布新的快照。
+     * </p>
      *
      * @param cacheKey 缓存键
      * @param data     数据
      */
     public void addToCache(String cacheKey, T data) {
-        if (annotation.enableCache()) {
-            cache.computeIfAbsent(cacheKey, k -> ConcurrentHashMap.newKeySet()).add(data);
+        if (!annotation.enableCache()) {
+            return;
+        }
+        synchronized (cacheLock) {
+            if (building != null) {
+                building.addToCache(cacheKey, data);
+                return;
+            }
+            DataSnapshot<T> current = snapshot;
+            if (current.cached(cacheKey).contains(data)) {
+                return;
+            }
+            Map<String, Set<T>> updated = new LinkedHashMap<>(current.cache());
+            Set<T> values = new LinkedHashSet<>(current.cached(cacheKey));
+            values.add(data);
+            updated.put(cacheKey, values);
+            snapshot = current.withCache(updated);
         }
     }
 
@@ -148,7 +224,125 @@ public class DataManager<T> extends SimpleJsonResourceReloadListener {
      * 清空缓存。
      */
     public void clearCache() {
-        cache.clear();
+        synchronized (cacheLock) {
+            if (building != null) {
+                building.clearCache();
+            } else {
+                snapshot = snapshot.withCache(Map.of());
+            }
+        }
+    }
+
+    /**
+     * 注册二级索引。
+     * <p>
+     * 索引立即按当前数据构建，之后每次重载或同步数据时随快照重新构建。重复注册同一个索引没有效果。
+     * </p>
+     *
+     * @param index 索引声明
+     */
+    public void addIndex(DataIndex<T, ?> index) {
+        synchronized (cacheLock) {
+            if (indexes.contains(index)) {
+                return;
+            }
+            indexes.add(index);
+            if (building == null) {
+                snapshot = snapshot.withIndex(index);
+            }
+        }
+    }
+
+    /**
+     * 按索引键获取数据。
+     *
+     * @param index 已注册的索引
+     * @param key   键
+     * @param <K>   键类型
+     * @return 只读数据列表，不存在时为空列表
+     * @throws IllegalStateException 索引未注册时抛出
+     */
+    public <K> List<T> lookup(DataIndex<T, K> index, K key) {
+        return snapshot.lookup(index, key);
+    }
+
+    /**
+     * 按整数键获取数据，不装箱。
+     *
+     * @param index 已注册的索引
+     * @param key   键
+     * @return 只读数据列表，不存在时为空列表
+     * @throws IllegalStateException 索引未注册时抛出
+     */
+    public List<T> lookup(DataIndex<T, Integer> index, int key) {
+        return snapshot.lookup(index, key);
+    }
+
+    /**
+     * 按长整数键获取数据，不装箱。
+     *
+     * @param index 已注册的索引
+     * @param key   键
+     * @return 只读数据列表，不存在时为空列表
+     * @throws IllegalStateException 索引未注册时抛出
+     */
+    public List<T> lookup(DataIndex<T, Long> index, long key) {
+        return snapshot.lookup(index, key);
+    }
+
+    /**
+     * 设置条件提取器。
+     * <p>
+     * 设置后可以通过 {@link #findMatching} 使用条件索引查找条件满足的数据，
+     * 代替遍历 {@link #getDataList()} 并逐个调用 {@link ExpressionEngine#checkConditions}。
+     * 设置时立即按当前快照构建索引，之后每次重新加载数据时随新快照一起构建。
+     * </p>
+     *
+     * @param extractor 获取数据条件映射的函数
+     */
+    public void setConditionExtractor(Function<T, Map<String, String>> extractor) {
+        synchronized (cacheLock) {
+            this.conditionExtractor = extractor;
+            this.ruleIndex = extractor != null ? RuleIndex.build(snapshot.values(), extractor) : null;
+        }
+    }
+
+    /**
+     * 获取条件索引。
+     * <p>
+     * 索引在发布新快照以及 {@link DataRegistry#initializeExpressionEngine() 初始化表达式引擎}时构建，
+     * 访问时不会触发构建。
+     * </p>
+     *
+     * @return 条件索引
+     * @throws IllegalStateException 未设置条件提取器时抛出
+     */
+    public RuleIndex<T> getRuleIndex() {
+        RuleIndex<T> index = ruleIndex;
+        if (index == null) {
+            throw new IllegalStateException("No condition extractor set for " + dataClass.getSimpleName());
+        }
+        return index;
+    }
+
+    /**
+     * 查找条件全部满足的数据。
+     *
+     * @param frame 变量帧
+     * @return 匹配的数据
+     */
+    public List<T> findMatching(VariableFrame frame) {
+        return getRuleIndex().match(frame);
+    }
+
+    /**
+     * 查找条件全部满足的数据。
+     *
+     * @param context 上下文变量
+     * @return 匹配的数据
+     */
+    public List<T> findMatching(Map<String, Object> context) {
+        return getRuleIndex().match(context);
     }
 
     /**
@@ -160,146 +354,140 @@ public class DataManager<T> extends SimpleJsonResourceReloadListener {
      * @param data 新数据
      */
     public void updateClientData(Map<ResourceLocation, T> data) {
-        loadedData.clear();
-        loadedData.putAll(data);
-        clearCache();
-
-        // 重建缓存
-        if (annotation.enableCache()) {
-            for (Map.Entry<ResourceLocation, T> entry : data.entrySet()) {
-                buildCache(entry.getValue());
+        DataSnapshot.Builder<T> builder = beginBuild();
+        try {
+            // 网络包中的数据没有固定顺序，按资源位置排序，发布和构建缓存的顺序都与服务端一致
+            for (Map.Entry<ResourceLocation, T> entry : new TreeMap<>(data).entrySet()) {
+                builder.put(entry.getKey(), entry.getValue());
+
+                // 重建缓存
+                if (annotation.enableCache()) {
+                    buildCache(entry.getValue());
+                }
             }
+        } catch (RuntimeException e) {
+            abandon(builder);
+            throw e;
         }
+        publish(builder);
 
         OElib.LOGGER.debug("Updated client data for {}: {} entries", dataClass.getSimpleName(), data.size());
 
         MinecraftForge.EVENT_BUS.post(new DataReloadEvent(dataClass, data.size(), 0));
     }
 
+    /**
+     * 在后台线程读取资源后，并行解码内容有变化的数据文件。
+     * <p>
+     * 验证器声明为 {@link DataValidator#threadSafe() 线程安全} 时同时在后台线程验证，
+     * 否则留到 {@link #apply} 中在主线程验证。结果暂存到下一次 {@link #apply} 中发布。
+     * </p>
+     */
+    @Override
+    protected Map<ResourceLocation, JsonElement> prepare(ResourceManager resourceManager, ProfilerFiller profiler) {
+        Map<ResourceLocation, JsonElement> object = super.prepare(resourceManager, profiler);
+        prepared = decode(object);
+        return object;
+    }
+
     @Override
     protected void apply(Map<ResourceLocation, JsonElement> object, ResourceManager resourceManager, ProfilerFiller profiler) {
-        loadedData.clear();
-        deferredData.clear();
-        clearCache();
+        Prepared<T> result = prepared;
+        prepared = null;
+        if (result == null || result.source() != object) {
+            // 没有经过 prepare 阶段时在当前线程解码
+            result = decode(object);
+        }
 
-        // 过滤资源：如果注解指定了modid，只处理该modid命名空间下的资源
-        Map<ResourceLocation, JsonElement> filteredObject = new HashMap<>();
-        String targetModid = annotation.modid();
+        DataSnapshot.Builder<T> builder = beginBuild();
 
-        if (!targetModid.isEmpty()) {
-            // 只处理指定modid命名空间下的资源
-            for (Map.Entry<ResourceLocation, JsonElement> entry : object.entrySet()) {
-                if (targetModid.equals(entry.getKey().getNamespace())) {
-                    filteredObject.put(entry.getKey(), entry.getValue());
-                }
-            }
+        if (!annotation.modid().isEmpty()) {
             OElib.LOGGER.debug("Filtered {} resources for modid '{}' from {} total resources",
-                    filteredObject.size(), targetModid, object.size());
-        } else {
-            // 如果没有指定modid，处理所有资源
-            filteredObject = object;
+                    result.files().size(), annotation.modid(), object.size());
         }
-
-        OElib.LOGGER.info("Loading {} data from {} files", dataClass.getSimpleName(), filteredObject.size());
+        OElib.LOGGER.info("Loading {} data from {} files ({} unchanged since last reload)",
+                dataClass.getSimpleName(), result.files().size(), result.reused());
 
         int validCount = 0;
         int deferredCount = 0;
         int invalidCount = 0;
+        Map<ResourceLocation, LoadedFile<T>> files = new HashMap<>(result.files().size() * 4 / 3 + 1);
 
-        for (Map.Entry<ResourceLocation, JsonElement> entry : filteredObject.entrySet()) {
-            ResourceLocation location = entry.getKey();
-            JsonElement json = entry.getValue();
+        try {
+            // 按资源位置顺序验证和发布，日志顺序和计数与解码的并行度无关
+            for (LoadedFile<T> loaded : result.files()) {
+                DecodedFile<T> file = validate(loaded.file());
+                if (file != loaded.file()) {
+                    loaded = LoadedFile.of(loaded.digest(), file);
+                }
+                files.put(file.location(), loaded);
+                if (file.arraySize() >= 0) {
+                    OElib.LOGGER.debug("Processing array with {} elements from {}", file.arraySize(), file.location());
+                }
 
-            try {
-                if (annotation.supportArray() && json.isJsonArray()) {
-                    // 处理数组格式
-                    var jsonArray = json.getAsJsonArray();
-                    OElib.LOGGER.debug("Processing array with {} elements from {}", jsonArray.size(), location);
-
-                    for (int i = 0; i < jsonArray.size(); i++) {
-                        JsonElement element = jsonArray.get(i);
-                        ResourceLocation elementLocation = new ResourceLocation(
-                                location.getNamespace(),
-                                location.getPath() + "_" + i
-                        );
-
-                        var result = codec.parse(JsonOps.INSTANCE, element);
-                        if (result.result().isPresent()) {
-                            T data = result.result().get();
-
-                            // 验证数据
-                            var validationResult = validator.validate(data, elementLocation);
-                            if (validationResult.valid()) {
-                                if (validationResult.deferrable()) {
-                                    // 延迟验证的数据
-                                    deferredData.put(elementLocation, data);
-                                    deferredCount++;
-                                    OElib.LOGGER.debug("Deferred {} from array[{}]: {} ({})",
-                                            dataClass.getSimpleName(), i, elementLocation, validationResult.message());
-                                } else {
-                                    // 正常验证通过的数据
-                                    loadedData.put(elementLocation, data);
-
-                                    // 构建缓存
-                                    if (annotation.enableCache()) {
-                                        buildCache(data);
-                                    }
-
-                                    validCount++;
-                                    OElib.LOGGER.debug("Loaded {} from array[{}]: {}", dataClass.getSimpleName(), i, elementLocation);
-                                }
+                for (Decoded<T> entry : file.entries()) {
+                    boolean array = entry.index() >= 0;
+                    switch (entry.status()) {
+                        case DEFERRED -> {
+                            // 延迟验证的数据
+                            builder.putDeferred(entry.location(), entry.data());
+                            deferredCount++;
+                            if (array) {
+                                OElib.LOGGER.debug("Deferred {} from array[{}]: {} ({})",
+                                        dataClass.getSimpleName(), entry.index(), entry.location(), entry.message());
                             } else {
-                                invalidCount++;
-                                OElib.LOGGER.warn("Invalid {} data in array[{}] of {}: {}",
-                                        dataClass.getSimpleName(), i, location, validationResult.message());
+                                OElib.LOGGER.debug("Deferred {}: {} ({})", dataClass.getSimpleName(), entry.location(), entry.message());
                             }
-                        } else {
-                            invalidCount++;
-                            OElib.LOGGER.error("Failed to parse {} data from array[{}] of {}: {}",
-                                    dataClass.getSimpleName(), i, location, result.error().orElse(null));
                         }
-                    }
-                } else {
-                    // 处理单个对象格式
-                    var result = codec.parse(JsonOps.INSTANCE, json);
-                    if (result.result().isPresent()) {
-                        T data = result.result().get();
-
-                        // 验证数据
-                        var validationResult = validator.validate(data, location);
-                        if (validationResult.valid()) {
-                            if (validationResult.deferrable()) {
-                                // 延迟验证的数据
-                                deferredData.put(location, data);
-                                deferredCount++;
-                                OElib.LOGGER.debug("Deferred {}: {} ({})",
-                                        dataClass.getSimpleName(), location, validationResult.message());
-                            } else {
-                                // 正常验证通过的数据
-                                loadedData.put(location, data);
+                        case LOADED -> {
+                            // 正常验证通过的数据
+                            builder.put(entry.location(), entry.data());
 
-                                // 构建缓存
-                                if (annotation.enableCache()) {
-                                    buildCache(data);
-                                }
+                            // 构建缓存
+                            if (annotation.enableCache()) {
+                                buildCache(entry.data());
+                            }
 
-                                validCount++;
-                                OElib.LOGGER.debug("Loaded {}: {}", dataClass.getSimpleName(), location);
+                            validCount++;
+                            if (array) {
+                                OElib.LOGGER.debug("Loaded {} from array[{}]: {}", dataClass.getSimpleName(), entry.index(), entry.location());
+                            } else {
+                                OElib.LOGGER.debug("Loaded {}: {}", dataClass.getSimpleName(), entry.location());
                             }
-                        } else {
+                        }
+                        case INVALID -> {
                             invalidCount++;
-                            OElib.LOGGER.warn("Invalid {} data in {}: {}", dataClass.getSimpleName(), location, validationResult.message());
+                            if (array) {
+                                OElib.LOGGER.warn("Invalid {} data in array[{}] of {}: {}",
+                                        dataClass.getSimpleName(), entry.index(), file.location(), entry.message());
+                            } else {
+                                OElib.LOGGER.warn("Invalid {} data in {}: {}", dataClass.getSimpleName(), file.location(), entry.message());
+                            }
+                        }
+                        case UNPARSABLE -> {
+                            invalidCount++;
+                            if (array) {
+                                OElib.LOGGER.error("Failed to parse {} data from array[{}] of {}: {}",
+                                        dataClass.getSimpleName(), entry.index(), file.location(), entry.message());
+                            } else {
+                                OElib.LOGGER.error("Failed to parse {} data from {}: {}", dataClass.getSimpleName(), file.location(), entry.message());
+                            }
                         }
-                    } else {
-                        invalidCount++;
-                        OElib.LOGGER.error("Failed to parse {} data from {}: {}", dataClass.getSimpleName(), location, result.error().orElse(null));
                     }
                 }
-            } catch (Exception e) {
-                invalidCount++;
-                OElib.LOGGER.error("Error loading {} data from {}", dataClass.getSimpleName(), location, e);
+
+                if (file.error() != null) {
+                    invalidCount++;
+                    OElib.LOGGER.error("Error loading {} data from {}", dataClass.getSimpleName(), file.location(), file.error());
+                }
             }
+        } catch (RuntimeException e) {
+            abandon(builder);
+            throw e;
         }
+        publish(builder);
+        previousFiles = files;
+        DataRegistry.schedulePrecompile();
 
         OElib.LOGGER.info("Loaded {} valid {} entries, {} deferred entries, {} invalid entries were skipped",
                 validCount, dataClass.getSimpleName(), deferredCount, invalidCount);
@@ -311,6 +499,177 @@ public class DataManager<T> extends SimpleJsonResourceReloadListener {
         MinecraftForge.EVENT_BUS.post(new DataReloadEvent(dataClass, validCount + deferredCount, invalidCount));
     }
 
+    /**
+     * 过滤资源并在线程池中并行解码每个文件，结果按资源位置排序。
+     * <p>
+     * 内容摘要与上一次加载相同的文件直接复用上一次的解码结果，不再经过编解码器和验证器。
+     * 只复用全部条目都验证通过或无法解析的文件：延迟验证和验证失败的结果可能取决于其他数据或已加载的模组，
+     * 每次都重新验证。
+     * </p>
+     */
+    private Prepared<T> decode(Map<ResourceLocation, JsonElement> object) {
+        // 过滤资源：如果注解指定了modid，只处理该modid命名空间下的资源
+        String targetModid = annotation.modid();
+        List<Map.Entry<ResourceLocation, JsonElement>> files = new ArrayList<>();
+        for (Map.Entry<ResourceLocation, JsonElement> entry : object.entrySet()) {
+            if (targetModid.isEmpty() || targetModid.equals(entry.getKey().getNamespace())) {
+                files.add(entry);
+            }
+        }
+        files.sort(Map.Entry.comparingByKey());
+
+        Map<ResourceLocation, LoadedFile<T>> previous = previousFiles;
+        // 每个下标只由一个任务写入，并行流结束后对当前线程可见
+        List<LoadedFile<T>> decoded = new ArrayList<>(Collections.nCopies(files.size(), null));
+        ExpressionEngine.runParallel(() -> IntStream.range(0, files.size()).parallel().forEach(i -> {
+            ResourceLocation location = files.get(i).getKey();
+            JsonElement json = files.get(i).getValue();
+            byte[] digest = contentDigest(json);
+            LoadedFile<T> old = previous.get(location);
+            if (old != null && old.reusable() && Arrays.equals(old.digest(), digest)) {
+                decoded.set(i, old);
+            } else {
+                decoded.set(i, LoadedFile.of(digest, decodeFile(location, json)));
+            }
+        }));
+
+        int reused = 0;
+        for (LoadedFile<T> file : decoded) {
+            if (previous.get(file.file().location()) == file) {
+                reused++;
+            }
+        }
+        return new Prepared<>(object, decoded, reused);
+    }
+
+    /**
+     * 计算文件内容的 SHA-256 摘要，只保留摘要而不是整棵 JSON 树，供下一次重载判断文件是否变化。
+     * <p>
+     * 按节点类型、长度和原始文本逐节点写入摘要，不生成中间字符串。对象成员按顺序写入：
+     * 数据中映射的迭代顺序来自成员顺序，并会影响变量的求值顺序。基本值按类型和原始文本写入，
+     * {@code 1} 和 {@code 1.0} 视为不同。
+     * </p>
+     */
+    private static byte[] contentDigest(JsonElement json) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+        updateDigest(digest, json);
+        return digest.digest();
+    }
+
+    private static void updateDigest(MessageDigest digest, JsonElement json) {
+        if (json.isJsonObject()) {
+            Set<Map.Entry<String, JsonElement>> members = json.getAsJsonObject().entrySet();
+            updateDigest(digest, 'O', members.size());
+            for (Map.Entry<String, JsonElement> member : members) {
+                updateDigest(digest, 'K', member.getKey());
+                updateDigest(digest, member.getValue());
+            }
+        } else if (json.isJsonArray()) {
+            updateDigest(digest, 'A', json.getAsJsonArray().size());
+            for (JsonElement element : json.getAsJsonArray()) {
+                updateDigest(digest, element);
+            }
+        } else if (json.isJsonPrimitive()) {
+            JsonPrimitive primitive = json.getAsJsonPrimitive();
+            char type = primitive.isString() ? 'S' : primitive.isNumber() ? 'N' : 'B';
+            updateDigest(digest, type, primitive.getAsString());
+        } else {
+            digest.update((byte) 'Z');
+        }
+    }
+
+    private static void updateDigest(MessageDigest digest, char type, String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        updateDigest(digest, type, bytes.length);
+        digest.update(bytes);
+    }
+
+    private static void updateDigest(MessageDigest digest, char type, int length) {
+        digest.update((byte) type);
+        digest.update((byte) (length >>> 24));
+        digest.update((byte) (length >>> 16));
+        digest.update((byte) (length >>> 8));
+        digest.update((byte) length);
+    }
+
+    private DecodedFile<T> decodeFile(ResourceLocation location, JsonElement json) {
+        List<Decoded<T>> entries = new ArrayList<>();
+        int arraySize = -1;
+        try {
+            if (annotation.supportArray() && json.isJsonArray()) {
+                // 处理数组格式
+                var jsonArray = json.getAsJsonArray();
+                arraySize = jsonArray.size();
+
+                for (int i = 0; i < jsonArray.size(); i++) {
+                    ResourceLocation elementLocation = new ResourceLocation(
+                            location.getNamespace(),
+                            location.getPath() + "_" + i
+                    );
+                    entries.add(decodeElement(elementLocation, i, jsonArray.get(i)));
+                }
+            } else {
+                // 处理单个对象格式
+                entries.add(decodeElement(location, -1, json));
+            }
+        } catch (Exception e) {
+            return new DecodedFile<>(location, arraySize, entries, e);
+        }
+        return new DecodedFile<>(location, arraySize, entries, null);
+    }
+
+    private Decoded<T> decodeElement(ResourceLocation location, int index, JsonElement json) {
+        var result = codec.parse(JsonOps.INSTANCE, json);
+        if (result.result().isEmpty()) {
+            return new Decoded<>(location, index, null, Status.UNPARSABLE, String.valueOf(result.error().orElse(null)));
+        }
+
+        T data = result.result().get();
+        if (!validator.threadSafe()) {
+            return new Decoded<>(location, index, data, Status.PARSED, null);
+        }
+        return validateElement(location, index, data);
+    }
+
+    /**
+     * 在当前线程验证文件中解码时尚未验证的条目。
+     * <p>
+     * 验证器抛出异常时与解码失败一样记录在文件结果中，此前已验证的条目依然有效。
+     * </p>
+     *
+     * @return 验证后的文件结果，没有待验证的条目时返回原结果
+     */
+    private DecodedFile<T> validate(DecodedFile<T> file) {
+        if (file.entries().stream().noneMatch(entry -> entry.status() == Status.PARSED)) {
+            return file;
+        }
+        List<Decoded<T>> entries = new ArrayList<>(file.entries().size());
+        try {
+            for (Decoded<T> entry : file.entries()) {
+                entries.add(entry.status() == Status.PARSED
+                        ? validateElement(entry.location(), entry.index(), entry.data()) : entry);
+            }
+        } catch (Exception e) {
+            return new DecodedFile<>(file.location(), file.arraySize(), entries, e);
+        }
+        return new DecodedFile<>(file.location(), file.arraySize(), entries, file.error());
+    }
+
+    private Decoded<T> validateElement(ResourceLocation location, int index, T data) {
+        // 验证数据
+        var validationResult = validator.validate(data, location);
+        if (!validationResult.valid()) {
+            return new Decoded<>(location, index, data, Status.INVALID, validationResult.message());
+        }
+        return new Decoded<>(location, index, data,
+                validationResult.deferrable() ? Status.DEFERRED : Status.LOADED, validationResult.message());
+    }
+
     /**
      * 构建缓存。
      * <p>
@@ -324,13 +683,76 @@ public class DataManager<T> extends SimpleJsonResourceReloadListener {
         addToCache("all", data);
     }
 
+    /**
+     * 开始构建新的快照，之后通过 {@link #addToCache} 添加的缓存写入该快照。
+     */
+    private DataSnapshot.Builder<T> beginBuild() {
+        DataSnapshot.Builder<T> builder = new DataSnapshot.Builder<>();
+        synchronized (cacheLock) {
+            building = builder;
+        }
+        return builder;
+    }
+
+    /**
+     * 按当前快照和引擎状态重建所有数据管理器的条件索引。
+     * <p>
+     * 条件的分类取决于引擎的函数表，引擎初始化之前构建的索引只能逐条检查，
+     * 初始化后需要重建，否则会在首次匹配时于游戏线程中重建。
+     * </p>
+     */
+    static void rebuildRuleIndexes() {
+        for (DataManager<?> manager : managers.values()) {
+            manager.rebuildRuleIndex();
+        }
+    }
+
+    private void rebuildRuleIndex() {
+        synchronized (cacheLock) {
+            Function<T, Map<String, String>> extractor = conditionExtractor;
+            if (extractor != null) {
+                ruleIndex = RuleIndex.build(snapshot.values(), extractor);
+            }
+        }
+    }
+
+    /**
+     * 以一次写入替换当前快照，并按新快照重建条件索引。
+     */
+    private void publish(DataSnapshot.Builder<T> builder) {
+        synchronized (cacheLock) {
+            DataSnapshot<T> built = builder.build(snapshot, indexes);
+            Function<T, Map<String, String>> extractor = conditionExtractor;
+            RuleIndex<T> index = extractor != null ? RuleIndex.build(built.values(), extractor) : null;
+            snapshot = built;
+            ruleIndex = index;
+            building = null;
+        }
+    }
+
+    /**
+     * 放弃构建中的快照，保留当前快照。
+     */
+    private void abandon(DataSnapshot.Builder<T> builder) {
+        synchronized (cacheLock) {
+            if (building == builder) {
+                building = null;
+            }
+        }
+    }
+
+    private Map<ResourceLocation, T> syncData() {
+        DataSnapshot<T> current = snapshot;
+        Map<ResourceLocation, T> allData = new HashMap<>(current.data());
+        allData.putAll(current.deferred());
+        return allData;
+    }
+
     private void syncToAllPlayers() {
         try {
             MinecraftServer server = ServerLifecycleHooks.getCurrentServer();
-            if (server != null && (!loadedData.isEmpty() || !deferredData.isEmpty())) {
-                Map<ResourceLocation, T> allData = new HashMap<>(loadedData);
-                allData.putAll(deferredData);
-                DataSyncPacket<T> packet = new DataSyncPacket<>(dataClass, allData);
+            if (server != null && snapshot.size() > 0) {
+                DataSyncPacket<T> packet = new DataSyncPacket<>(dataClass, syncData());
                 packet.sendToAll();
                 OElib.LOGGER.debug("Synced {} data to all players", dataClass.getSimpleName());
             }
@@ -345,11 +767,9 @@ public class DataManager<T> extends SimpleJsonResourceReloadListener {
      * @param player 玩家
      */
     public void syncToPlayer(ServerPlayer player) {
-        if (annotation.syncToClient() && (!loadedData.isEmpty() || !deferredData.isEmpty())) {
+        if (annotation.syncToClient() && snapshot.size() > 0) {
             try {
-                Map<ResourceLocation, T> allData = new HashMap<>(loadedData);
-                allData.putAll(deferredData);
-                DataSyncPacket<T> packet = new DataSyncPacket<>(dataClass, allData);
+                DataSyncPacket<T> packet = new DataSyncPacket<>(dataClass, syncData());
                 packet.sendTo(player);
                 OElib.LOGGER.debug("Synced {} data to player: {}", dataClass.getSimpleName(), player.getName().getString());
             } catch (Exception e) {
@@ -404,4 +824,71 @@ public class DataManager<T> extends SimpleJsonResourceReloadListener {
             return (DataValidator<T>) new DataValidator.NoValidator();
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * 单个数据条目的解码结果。
+     * <p>
+     * {@code PARSED} 表示已解码但尚未验证，只出现在 prepare 和 apply 之间。
+     * </p>
+     */
+    private enum Status {
+        PARSED,
+        LOADED,
+        DEFERRED,
+        INVALID,
+        UNPARSABLE
+    }
+
+    /**
+     * 单个数据条目。
+     *
+     * @param location 资源位置，数组元素带有下标后缀
+     * @param index    数组下标，不是数组元素时为 -1
+     * @param data     解码后的数据，无法解析时为 null
+     * @param status   解码结果
+     * @param message  验证或解析消息
+     */
+    private record Decoded<T>(ResourceLocation location, int index, T data, Status status, String message) {
+    }
+
+    /**
+     * 单个数据文件的解码结果。
+     *
+     * @param location  文件的资源位置
+     * @param arraySize 数组元素数，不是数组时为 -1
+     * @param entries   已解码的条目
+     * @param error     解码过程中抛出的异常，此前已解码的条目依然有效
+     */
+    private record DecodedFile<T>(ResourceLocation location, int arraySize, List<Decoded<T>> entries, Exception error) {
+    }
+
+    /**
+     * 文件内容摘要及其解码结果，供下一次重载判断文件是否变化。
+     *
+     * @param digest   文件内容的 SHA-256 摘要
+     * @param file     解码结果
+     * @param reusable 内容不变时能否直接复用解码结果
+     */
+    private record LoadedFile<T>(byte[] digest, DecodedFile<T> file, boolean reusable) {
+        private static <T> LoadedFile<T> of(byte[] digest, DecodedFile<T> file) {
+            boolean reusable = file.error() == null;
+            for (Decoded<T> entry : file.entries()) {
+                if (entry.status() != Status.LOADED && entry.status() != Status.UNPARSABLE) {
+                    reusable = false;
+                    break;
+                }
+            }
+            return new LoadedFile<>(digest, file, reusable);
+        }
+    }
+
+    /**
+     * prepare 阶段的结果。
+     *
+     * @param source prepare 返回给 apply 的资源映射，用于确认结果对应同一次重载
+     * @param files  按资源位置排序的解码结果
+     * @param reused 复用上一次解码结果的文件数
+     */
+    private record Prepared<T>(Map<ResourceLocation, JsonElement> source, List<LoadedFile<T>> files, int reused) {
+    }
+}
@@ -3,13 +3,16 @@ package com.mafuyu404.oelib.core;
 import com.mafuyu404.oelib.OElib;
 import com.mafuyu404.oelib.api.DataDriven;
 import com.mafuyu404.oelib.functions.CoreFunctions;
+import com.mafuyu404.oelib.util.ExpressionTokenizer;
 import com.mafuyu404.oelib.util.FunctionUsageAnalyzer;
+import net.minecraft.resources.ResourceLocation;
 import net.minecraftforge.event.AddReloadListenerEvent;
 import net.minecraftforge.eventbus.api.SubscribeEvent;
 import net.minecraftforge.fml.common.Mod;
 
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * 数据注册表。
@@ -23,8 +26,9 @@ public class DataRegistry {
 
     private static final Set<Class<?>> registeredTypes = ConcurrentHashMap.newKeySet();
     private static final Map<Class<?>, FunctionUsageAnalyzer.DataExpressionExtractor<?>> extractors = new ConcurrentHashMap<>();
+    private static final AtomicBoolean precompilePending = new AtomicBoolean();
     private static boolean initialized = false;
-    private static boolean expressionEngineInitialized = false;
+    private static volatile boolean expressionEngineInitialized = false;
 
     /**
      * 注册数据驱动类型。
@@ -82,22 +86,30 @@ public class DataRegistry {
         // 添加核心必需函数
         Set<String> allUsedFunctions = new HashSet<>(FunctionUsageAnalyzer.getCoreRequiredFunctions());
 
-        // 分析所有已注册数据类型中使用的函数
-        for (Class<?> dataClass : registeredTypes) {
+        // 并行分析所有已注册数据类型中使用的函数
+        Map<Class<?>, Set<String>> usedByType = new ConcurrentHashMap<>();
+        ExpressionEngine.runParallel(() -> registeredTypes.parallelStream().forEach(dataClass -> {
             FunctionUsageAnalyzer.DataExpressionExtractor<Object> extractor =
                     (FunctionUsageAnalyzer.DataExpressionExtractor<Object>) extractors.get(dataClass);
 
             if (extractor != null) {
                 DataManager<Object> manager = (DataManager<Object>) DataManager.get(dataClass);
                 if (manager != null) {
-                    Map<net.minecraft.resources.ResourceLocation, Object> data = manager.getAllData();
-                    Set<String> usedFunctions = FunctionUsageAnalyzer.analyzeUsedFunctions(data, extractor);
-                    allUsedFunctions.addAll(usedFunctions);
-
-                    OElib.LOGGER.debug("Found {} functions in {}: {}",
-                            usedFunctions.size(), dataClass.getSimpleName(), usedFunctions);
+                    // 延迟验证的数据同样会被求值，其中的函数也需要注册
+                    Map<ResourceLocation, Object> data = manager.getSnapshot().entries();
+                    usedByType.put(dataClass, FunctionUsageAnalyzer.analyzeUsedFunctions(data, extractor));
                 }
             }
+        }));
+
+        for (Class<?> dataClass : registeredTypes) {
+            Set<String> usedFunctions = usedByType.get(dataClass);
+            if (usedFunctions != null) {
+                allUsedFunctions.addAll(usedFunctions);
+
+                OElib.LOGGER.debug("Found {} functions in {}: {}",
+                        usedFunctions.size(), dataClass.getSimpleName(), usedFunctions);
+            }
         }
 
         OElib.LOGGER.info("Smart registration: found {} total used functions: {}",
@@ -105,8 +117,98 @@ public class DataRegistry {
 
         // 使用智能注册初始化表达式引擎
         ExpressionEngine.initialize(allUsedFunctions);
+        // 条件分类依赖新的函数表，在这里重建索引，避免首次匹配时在游戏线程中重建
+        DataManager.rebuildRuleIndexes();
 
         expressionEngineInitialized = true;
+
+        schedulePrecompile();
+    }
+
+    /**
+     * 在后台线程池中预编译所有数据包中的表达式，不阻塞调用线程。
+     * <p>
+     * 表达式引擎初始化后，每次数据重新加载都会调用。尚未开始的预编译任务会合并，
+     * 已开始的任务结束后再按最新的数据执行一次。表达式引擎未初始化时不做任何事。
+     * </p>
+     */
+    static void schedulePrecompile() {
+        if (!expressionEngineInitialized || !precompilePending.compareAndSet(false, true)) {
+            return;
+        }
+        ExpressionEngine.runInBackground(() -> {
+            // 在读取快照之前清除标记，之后发布的数据会触发新的任务
+            precompilePending.set(false);
+            try {
+                precompileExpressions();
+            } catch (RuntimeException e) {
+                OElib.LOGGER.error("Failed to precompile expressions", e);
+            }
+        });
+    }
+
+    /**
+     * 预编译所有数据包中的表达式。
+     * <p>
+     * 使用已注册的表达式提取器收集每个数据条目中的表达式，并在后台线程池中并行编译，
+     * 编译错误按数据条目报告。同时记录每个表达式所属的数据条目，供 {@link ExpressionProfiler} 归属统计。
+     * 调用线程会等待编译完成；重新加载数据时由数据管理器在后台自动调用。
+     * </p>
+     *
+     * @return 按数据条目分组的编译错误（表达式到错误信息）
+     */
+    @SuppressWarnings("unchecked")
+    public static Map<ResourceLocation, Map<String, String>> precompileExpressions() {
+        Map<ResourceLocation, Set<String>> expressions = new HashMap<>();
+        ExpressionProfiler.clearAttributions();
+
+        for (Class<?> dataClass : registeredTypes) {
+            FunctionUsageAnalyzer.DataExpressionExtractor<Object> extractor =
+                    (FunctionUsageAnalyzer.DataExpressionExtractor<Object>) extractors.get(dataClass);
+            DataManager<Object> manager = (DataManager<Object>) DataManager.get(dataClass);
+            if (extractor == null || manager == null) {
+                continue;
+            }
+
+            for (Map.Entry<ResourceLocation, Object> entry : manager.getSnapshot().entries().entrySet()) {
+                Set<String> extracted = extractor.extractAllExpressions(entry.getValue());
+                if (extracted != null && !extracted.isEmpty()) {
+                    expressions.computeIfAbsent(entry.getKey(), k -> new HashSet<>()).addAll(extracted);
+                    for (String expression : extracted) {
+                        ExpressionProfiler.attribute(expression, entry.getKey(), dataClass);
+                    }
+                }
+            }
+        }
+
+        long start = System.nanoTime();
+        Map<ResourceLocation, Map<String, String>> errors = ExpressionEngine.precompile(expressions);
+        long elapsed = (System.nanoTime() - start) / 1_000_000;
+
+        int total = expressions.values().stream().mapToInt(Set::size).sum();
+        int literals = 0;
+        Set<ResourceLocation> failed = new HashSet<>();
+        List<Map.Entry<ResourceLocation, Map<String, String>>> sorted = new ArrayList<>(errors.entrySet());
+        sorted.sort(Map.Entry.comparingByKey(Comparator.comparing(ResourceLocation::toString)));
+        for (Map.Entry<ResourceLocation, Map<String, String>> entry : sorted) {
+            for (Map.Entry<String, String> error : entry.getValue().entrySet()) {
+                // Iron Golem、minecraft:* 这类普通文本本来就按字符串比较，不是错误
+                if (ExpressionTokenizer.isPlainText(error.getKey())) {
+                    literals++;
+                    OElib.LOGGER.debug("Value in {} is not an expression and will be treated as a literal: '{}'",
+                            entry.getKey(), error.getKey());
+                } else {
+                    failed.add(entry.getKey());
+                    OElib.LOGGER.warn("Expression in {} failed to compile and will be treated as a literal: '{}': {}",
+                            entry.getKey(), error.getKey(), error.getValue());
+                }
+            }
+        }
+
+        OElib.LOGGER.info("Precompiled {} expressions from {} data entries in {} ms ({} literal values, {} entries with errors)",
+                total, expressions.size(), elapsed, literals, failed.size());
+
+        return errors;
     }
 
     @SubscribeEvent
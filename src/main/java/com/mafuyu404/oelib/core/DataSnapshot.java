@@ -0,0 +1,299 @@
+package com.mafuyu404.oelib.core;
+
+import net.minecraft.resources.ResourceLocation;
+
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * 数据管理器某一次加载结果的不可变快照。
+ * <p>
+ * 每次重载或客户端同步都会构建新的快照，完成后由 {@link DataManager} 通过一次 volatile 写入整体替换，
+ * 重载期间的读取方始终看到上一次完整的数据，而不会看到空的或部分填充的注册表。
+ * 快照中的映射、列表和集合都是只读视图，读取时无需复制或加锁。
+ * 迭代顺序在快照内固定：数据按资源位置排序，延迟验证的数据排在验证通过的数据之后。
+ * </p>
+ *
+ * @param <T> 数据类型
+ */
+public final class DataSnapshot<T> {
+
+    private final long version;
+    private final Map<ResourceLocation, T> data;
+    private final Map<ResourceLocation, T> deferred;
+    private final Map<String, Set<T>> cache;
+    private final Map<ResourceLocation, T> entries;
+    private final List<T> values;
+    private final Map<DataIndex<T, ?>, DataIndex.Table<T>> indexes;
+
+    private DataSnapshot(long version, Map<ResourceLocation, T> data, Map<ResourceLocation, T> deferred,
+                         Map<ResourceLocation, T> entries, Map<String, Set<T>> cache, List<T> values,
+                         Map<DataIndex<T, ?>, DataIndex.Table<T>> indexes) {
+        this.version = version;
+        this.data = data;
+        this.deferred = deferred;
+        this.entries = entries;
+        this.cache = cache;
+        this.values = values;
+        this.indexes = indexes;
+    }
+
+    /**
+     * 创建不包含任何数据的初始快照。
+     *
+     * @param <T> 数据类型
+     * @return 空快照
+     */
+    static <T> DataSnapshot<T> empty() {
+        return new DataSnapshot<>(0, Map.of(), Map.of(), Map.of(), Map.of(), List.of(), Map.of());
+    }
+
+    /**
+     * 获取快照版本，每次重载或同步数据时递增，只修改缓存时不变。
+     *
+     * @return 版本号
+     */
+    public long version() {
+        return version;
+    }
+
+    /**
+     * 获取验证通过的数据。
+     *
+     * @return 只读数据映射
+     */
+    public Map<ResourceLocation, T> data() {
+        return data;
+    }
+
+    /**
+     * 获取延迟验证的数据。
+     *
+     * @return 只读数据映射
+     */
+    public Map<ResourceLocation, T> deferred() {
+        return deferred;
+    }
+
+    /**
+     * 获取所有数据及其资源位置，包括延迟验证的数据，顺序与 {@link #values()} 相同。
+     *
+     * @return 只读数据映射
+     */
+    public Map<ResourceLocation, T> entries() {
+        return entries;
+    }
+
+    /**
+     * 获取所有数据，包括延迟验证的数据。
+     * <p>
+     * 列表在构建快照时生成，之后每次调用返回同一个实例，支持按下标随机访问。
+     * </p>
+     *
+     * @return 只读数据列表
+     */
+    public List<T> values() {
+        return values;
+    }
+
+    /**
+     * 按 {@link #values()} 的顺序遍历所有数据。
+     *
+     * @param action 对每个数据执行的操作
+     */
+    public void forEach(Consumer<? super T> action) {
+        for (int i = 0, size = values.size(); i < size; i++) {
+            action.accept(values.get(i));
+        }
+    }
+
+    /**
+     * 获取所有数据的分割迭代器。
+     * <p>
+     * 分割迭代器直接基于 {@link #values()}，能按下标均匀分割，适合并行遍历。
+     * </p>
+     *
+     * @return 分割迭代器
+     */
+    public Spliterator<T> spliterator() {
+        return values.spliterator();
+    }
+
+    /**
+     * 获取所有数据的流。
+     *
+     * @param parallel 是否并行
+     * @return 数据流
+     */
+    public Stream<T> stream(boolean parallel) {
+        return StreamSupport.stream(spliterator(), parallel);
+    }
+
+    /**
+     * 获取缓存。
+     *
+     * @return 缓存键到数据集合的只读映射
+     */
+    public Map<String, Set<T>> cache() {
+        return cache;
+    }
+
+    /**
+     * 根据缓存键获取数据。
+     *
+     * @param cacheKey 缓存键
+     * @return 只读数据集合，不存在时为空集合
+     */
+    public Set<T> cached(String cacheKey) {
+        return cache.getOrDefault(cacheKey, Collections.emptySet());
+    }
+
+    /**
+     * 按索引键获取数据。
+     *
+     * @param index 已注册的索引
+     * @param key   键
+     * @param <K>   键类型
+     * @return 只读数据列表，不存在时为空列表
+     * @throws IllegalStateException 索引未注册到数据管理器时抛出
+     */
+    public <K> List<T> lookup(DataIndex<T, K> index, K key) {
+        return table(index).get(key);
+    }
+
+    /**
+     * 按整数键获取数据，不装箱。
+     *
+     * @param index 已注册的索引
+     * @param key   键
+     * @return 只读数据列表，不存在时为空列表
+     * @throws IllegalStateException 索引未注册到数据管理器时抛出
+     */
+    public List<T> lookup(DataIndex<T, Integer> index, int key) {
+        return table(index).get(key);
+    }
+
+    /**
+     * 按长整数键获取数据，不装箱。
+     *
+     * @param index 已注册的索引
+     * @param key   键
+     * @return 只读数据列表，不存在时为空列表
+     * @throws IllegalStateException 索引未注册到数据管理器时抛出
+     */
+    public List<T> lookup(DataIndex<T, Long> index, long key) {
+        return table(index).get(key);
+    }
+
+    /**
+     * 获取索引中不同键的数量。
+     *
+     * @param index 已注册的索引
+     * @return 键数量
+     * @throws IllegalStateException 索引未注册到数据管理器时抛出
+     */
+    public int keyCount(DataIndex<T, ?> index) {
+        return table(index).keyCount();
+    }
+
+    private DataIndex.Table<T> table(DataIndex<T, ?> index) {
+        DataIndex.Table<T> table = indexes.get(index);
+        if (table == null) {
+            throw new IllegalStateException("Index " + index.getName() + " is not registered");
+        }
+        return table;
+    }
+
+    /**
+     * 获取数据条目总数，包括延迟验证的数据。
+     *
+     * @return 条目数
+     */
+    public int size() {
+        return values.size();
+    }
+
+    /**
+     * 以替换后的缓存创建快照，版本号和数据映射与当前快照相同。
+     *
+     * @param cache 新的缓存
+     * @return 新快照
+     */
+    DataSnapshot<T> withCache(Map<String, ? extends Collection<T>> cache) {
+        return new DataSnapshot<>(version, data, deferred, entries, freeze(cache), values, indexes);
+    }
+
+    /**
+     * 为当前数据构建新注册的索引，创建包含该索引的快照，版本号和数据与当前快照相同。
+     *
+     * @param index 索引
+     * @return 新快照
+     */
+    DataSnapshot<T> withIndex(DataIndex<T, ?> index) {
+        Map<DataIndex<T, ?>, DataIndex.Table<T>> updated = new IdentityHashMap<>(indexes);
+        updated.put(index, index.build(List.of(data, deferred)));
+        return new DataSnapshot<>(version, data, deferred, entries, cache, values, Collections.unmodifiableMap(updated));
+    }
+
+    private static <T> Map<String, Set<T>> freeze(Map<String, ? extends Collection<T>> cache) {
+        Map<String, Set<T>> frozen = new LinkedHashMap<>();
+        cache.forEach((key, values) -> frozen.put(key, Collections.unmodifiableSet(new LinkedHashSet<>(values))));
+        return Collections.unmodifiableMap(frozen);
+    }
+
+    /**
+     * 快照构建器。
+     * <p>
+     * 数据只在执行重载的线程中写入；缓存可能被其他线程通过 {@link DataManager#addToCache} 写入，
+     * 由数据管理器的缓存锁保护。{@link #build} 之后不再修改。
+     * </p>
+     *
+     * @param <T> 数据类型
+     */
+    static final class Builder<T> {
+        private final Map<ResourceLocation, T> data = new LinkedHashMap<>();
+        private final Map<ResourceLocation, T> deferred = new LinkedHashMap<>();
+        private final Map<String, Set<T>> cache = new LinkedHashMap<>();
+
+        void put(ResourceLocation location, T value) {
+            data.put(location, value);
+        }
+
+        void putDeferred(ResourceLocation location, T value) {
+            deferred.put(location, value);
+        }
+
+        void addToCache(String cacheKey, T value) {
+            cache.computeIfAbsent(cacheKey, k -> new LinkedHashSet<>()).add(value);
+        }
+
+        void clearCache() {
+            cache.clear();
+        }
+
+        /**
+         * 构建下一版本的快照。
+         *
+         * @param previous 上一版本的快照
+         * @param indexes  需要构建的索引
+         * @return 新快照
+         */
+        DataSnapshot<T> build(DataSnapshot<T> previous, Collection<DataIndex<T, ?>> indexes) {
+            List<T> values = new ArrayList<>(data.size() + deferred.size());
+            values.addAll(data.values());
+            values.addAll(deferred.values());
+            Map<ResourceLocation, T> entries = new LinkedHashMap<>(data);
+            entries.putAll(deferred);
+
+            Map<DataIndex<T, ?>, DataIndex.Table<T>> tables = new IdentityHashMap<>();
+            for (DataIndex<T, ?> index : indexes) {
+                tables.put(index, index.build(List.of(data, deferred)));
+            }
+            return new DataSnapshot<>(previous.version + 1, Collections.unmodifiableMap(data),
+                    Collections.unmodifiableMap(deferred), Collections.unmodifiableMap(entries), freeze(cache),
+                    Collections.unmodifiableList(values), Collections.unmodifiableMap(tables));
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package com.mafuyu404.oelib.core;
+
+import com.mafuyu404.oelib.api.ExpressionFunction;
+
+import java.lang.reflect.Method;
+import java.util.*;
+
+/**
+ * 表达式引擎某一代的不可变状态。
+ * <p>
+ * 包含已注册的函数以及对应的解析配置。引擎通过 volatile 引用发布快照，
+ * 求值线程读取一次引用后即可在一致的状态上无锁编译和执行；
+ * 重载、清空和注册函数都会构建新的快照并整体替换，已发布的快照不再修改。
+ * </p>
+ * <p>
+ * 快照还记录每个函数名最近一次被添加、移除或替换时的代数。已编译的表达式记录自己调用的函数名，
+ * 代数变化后只要这些函数都没有变化，编译结果就可以直接沿用，无需重新编译。
+ * </p>
+ */
+final class EngineSnapshot {
+
+    private final int generation;
+    private final FunctionConfiguration configuration;
+    private final Map<String, Method> functions;
+    private final boolean initialized;
+    private final Map<String, Integer> changes;
+
+    private EngineSnapshot(int generation, FunctionConfiguration configuration, Map<String, Method> functions,
+                           boolean initialized, Map<String, Integer> changes) {
+        this.generation = generation;
+        this.configuration = configuration;
+        this.functions = functions;
+        this.initialized = initialized;
+        this.changes = changes;
+    }
+
+    /**
+     * 创建不包含任何函数的初始快照。
+     *
+     * @return 空快照
+     */
+    static EngineSnapshot empty() {
+        return new EngineSnapshot(0, new FunctionConfiguration(), Map.of(), false, Map.of());
+    }
+
+    int generation() {
+        return generation;
+    }
+
+    FunctionConfiguration configuration() {
+        return configuration;
+    }
+
+    Map<String, Method> functions() {
+        return functions;
+    }
+
+    boolean initialized() {
+        return initialized;
+    }
+
+    /**
+     * 检查函数在给定代数之后是否都没有变化。
+     *
+     * @param names 函数名集合
+     * @param since 编译时的代数
+     * @return 是否都没有被添加、移除或替换
+     */
+    boolean isUnchanged(Set<String> names, int since) {
+        for (String name : names) {
+            Integer changed = changes.get(name);
+            if (changed != null && changed > since) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 获取在本代中变化的函数名。
+     *
+     * @return 函数名集合
+     */
+    Set<String> changedFunctions() {
+        Set<String> changed = new TreeSet<>();
+        changes.forEach((name, at) -> {
+            if (at == generation) {
+                changed.add(name);
+            }
+        });
+        return changed;
+    }
+
+    /**
+     * 快照构建器，在发布前收集函数。
+     */
+    static final class Builder {
+        private final FunctionConfiguration configuration;
+        private final Map<String, Method> functions;
+
+        /**
+         * 创建空的构建器。
+         */
+        Builder() {
+            this.configuration = new FunctionConfiguration();
+            this.functions = new HashMap<>();
+        }
+
+        /**
+         * 创建以现有快照为基础的构建器。
+         *
+         * @param base 基础快照
+         */
+        Builder(EngineSnapshot base) {
+            this.configuration = new FunctionConfiguration(base.configuration);
+            this.functions = new HashMap<>(base.functions);
+        }
+
+        Method get(String name) {
+            return functions.get(name);
+        }
+
+        boolean isEmpty() {
+            return functions.isEmpty();
+        }
+
+        int size() {
+            return functions.size();
+        }
+
+        /**
+         * 添加函数。
+         *
+         * @param name   函数名
+         * @param method 静态方法
+         * @return 是否已绑定为非反射调用
+         */
+        boolean add(String name, Method method) {
+            functions.put(name, method);
+            return configuration.addFunction(name, method);
+        }
+
+        /**
+         * 构建下一代快照，并与上一代比较记录变化的函数。
+         * <p>
+         * 稳定性为 {@link ExpressionFunction.Stability#PER_RELOAD} 的函数在编译期折叠，
+         * 每次重新初始化都需要重新计算，因此总是视为已变化。
+         * </p>
+         *
+         * @param previous    上一代快照
+         * @param initialized 是否已完成初始化
+         * @return 新快照
+         */
+        EngineSnapshot build(EngineSnapshot previous, boolean initialized) {
+            int generation = previous.generation + 1;
+            // 已移除的函数同样保留记录，引用它的旧编译结果才会失效
+            Map<String, Integer> changes = new HashMap<>(previous.changes);
+            Set<String> names = new HashSet<>(previous.functions.keySet());
+            names.addAll(functions.keySet());
+            for (String name : names) {
+                Method method = functions.get(name);
+                if (!Objects.equals(method, previous.functions.get(name)) || (method != null
+                        && method.getAnnotation(ExpressionFunction.class).stability() == ExpressionFunction.Stability.PER_RELOAD)) {
+                    changes.put(name, generation);
+                }
+            }
+            return new EngineSnapshot(generation, configuration, Collections.unmodifiableMap(functions), initialized,
+                    changes);
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package com.mafuyu404.oelib.core;
+
+import com.mafuyu404.oelib.util.ExpressionTokenizer;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * 有界的已编译表达式缓存。
+ * <p>
+ * 以规范化后的表达式作为键，格式上不同但语义相同的表达式共享同一编译结果；
+ * 规范化形式只用于查找，编译时使用调用方传入的原始表达式。
+ * 超出容量时使用 CLOCK（二次机会）算法近似 LRU 淘汰：读取只设置访问位，不加锁；
+ * 淘汰时跳过最近访问过的条目。
+ * </p>
+ */
+public final class ExpressionCache {
+
+    /**
+     * 默认容量。
+     */
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    private final Map<Object, Entry> entries = new ConcurrentHashMap<>();
+    private final Queue<Object> clock = new ConcurrentLinkedQueue<>();
+    // ConcurrentLinkedQueue.size() 需要遍历整个队列，单独计数
+    private final AtomicInteger clockSize = new AtomicInteger();
+    private final AtomicBoolean evicting = new AtomicBoolean();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private volatile int capacity;
+
+    ExpressionCache(int capacity) {
+        setCapacity(capacity);
+    }
+
+    /**
+     * 获取表达式对应的已编译句柄，不存在时使用给定函数编译。
+     *
+     * @param expression 原始表达式
+     * @param compiler   编译函数，参数为原始表达式
+     * @return 已编译句柄
+     */
+    CompiledExpression computeIfAbsent(String expression, Function<String, CompiledExpression> compiler) {
+        return computeIfAbsent(expression, null, compiler);
+    }
+
+    /**
+     * 获取表达式在给定限定符下对应的已编译句柄，不存在时使用给定函数编译。
+     * <p>
+     * 同一表达式在不同限定符（例如不同的类型签名）下分别缓存。
+     * </p>
+     *
+     * @param expression 原始表达式
+     * @param qualifier  限定符，可以为 null
+     * @param compiler   编译函数，参数为原始表达式
+     * @return 已编译句柄
+     */
+    CompiledExpression computeIfAbsent(String expression, String qualifier, Function<String, CompiledExpression> compiler) {
+        // 大多数表达式本身已是规范形式，先直接查找以避免规范化开销
+        Object key = qualify(expression, qualifier);
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            String normalized = ExpressionTokenizer.normalize(expression);
+            if (!normalized.equals(expression)) {
+                key = qualify(normalized, qualifier);
+                entry = entries.get(key);
+            }
+        }
+        if (entry != null) {
+            entry.referenced = true;
+            hits.increment();
+            return entry.value;
+        }
+
+        boolean[] created = new boolean[1];
+        entry = entries.computeIfAbsent(key, k -> {
+            created[0] = true;
+            return new Entry(compiler.apply(expression));
+        });
+
+        if (created[0]) {
+            misses.increment();
+            clock.offer(key);
+            clockSize.incrementAndGet();
+            evictIfNeeded();
+        } else {
+            entry.referenced = true;
+            hits.increment();
+        }
+        return entry.value;
+    }
+
+    private static Object qualify(String expression, String qualifier) {
+        return qualifier == null ? expression : new QualifiedKey(expression, qualifier);
+    }
+
+    /**
+     * 清空缓存，统计数据保留。
+     */
+    void clear() {
+        entries.clear();
+        clock.clear();
+        clockSize.set(0);
+    }
+
+    /**
+     * 设置缓存容量。
+     *
+     * @param capacity 最大条目数
+     */
+    void setCapacity(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Cache capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        evictIfNeeded();
+    }
+
+    /**
+     * 获取缓存统计信息。
+     *
+     * @return 统计快照
+     */
+    public Stats stats() {
+        return new Stats(hits.sum(), misses.sum(), evictions.sum(), entries.size(), capacity);
+    }
+
+    /**
+     * 重置命中、未命中和淘汰计数。
+     */
+    public void resetStats() {
+        hits.reset();
+        misses.reset();
+        evictions.reset();
+    }
+
+    private void evictIfNeeded() {
+        if (entries.size() <= capacity || !evicting.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            // 每个条目最多获得一次二次机会，循环次数有上限
+            int budget = clockSize.get() * 2;
+            while (entries.size() > capacity && budget-- > 0) {
+                Object key = clock.poll();
+                if (key == null) {
+                    break;
+                }
+                Entry entry = entries.get(key);
+                if (entry == null) {
+                    clockSize.decrementAndGet();
+                    continue;
+                }
+                if (entry.referenced) {
+                    entry.referenced = false;
+                    clock.offer(key);
+                } else {
+                    clockSize.decrementAndGet();
+                    if (entries.remove(key, entry)) {
+                        evictions.increment();
+                    }
+                }
+            }
+        } finally {
+            evicting.set(false);
+        }
+    }
+
+    /**
+     * 带限定符的键，直接复用两个字符串已缓存的哈希值，查找时无需拼接字符串。
+     */
+    private record QualifiedKey(String expression, String qualifier) {
+    }
+
+    private static final class Entry {
+        private final CompiledExpression value;
+        private volatile boolean referenced;
+
+        private Entry(CompiledExpression value) {
+            this.value = value;
+        }
+    }
+
+    /**
+     * 缓存统计信息。
+     *
+     * @param hits      命中次数
+     * @param misses    未命中（编译）次数
+     * @param evictions 淘汰次数
+     * @param size      当前驻留条目数
+     * @param capacity  最大条目数
+     */
+    public record Stats(long hits, long misses, long evictions, int size, int capacity) {
+
+        /**
+         * 获取命中率。
+         *
+         * @return 命中率，范围 0~1，无请求时为 0
+         */
+        public double hitRate() {
+            long total = hits + misses;
+            return total == 0 ? 0.0 : (double) hits / total;
+        }
+    }
+}
@@ -2,34 +2,87 @@ package com.mafuyu404.oelib.core;
 
 import com.mafuyu404.oelib.OElib;
 import com.mafuyu404.oelib.api.ExpressionFunction;
-import com.mafuyu404.oelib.event.FunctionRegistryEvent;
-import com.mafuyu404.oelib.functions.CoreFunctions;
-import com.mafuyu404.oelib.util.FunctionUsageAnalyzer;
-import net.minecraftforge.common.MinecraftForge;
-import org.apache.commons.lang3.tuple.Pair;
-import org.mvel2.MVEL;
-import org.mvel2.ParserContext;
-
-import java.io.Serializable;
+
 import java.lang.reflect.Method;
-import java.lang.reflect.Modifier;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
 
 /**
  * 表达式引擎。
  * <p>
  * 负责管理和执行 MVEL 表达式，支持自定义函数注册。
  * </p>
+ * <p>
+ * 静态方法委托给默认的 {@link ExpressionNamespace 引擎实例}。需要独立函数表和缓存的模组可以通过
+ * {@link #forNamespace(String)} 获取自己的实例，其重载和清空不会影响其他模组。
+ * </p>
  *
  */
 public class ExpressionEngine {
 
-    private static final Set<Class<?>> registeredClasses = ConcurrentHashMap.newKeySet();
-    private static final Map<String, Method> functionMap = new ConcurrentHashMap<>();
-    private static final Map<String, Serializable> compiledExpressions = new ConcurrentHashMap<>();
-    private static ParserContext parserContext = new ParserContext();
-    private static boolean initialized = false;
+    private static final ExpressionNamespace DEFAULT = new ExpressionNamespace(OElib.MODID, true);
+    private static final Map<String, ExpressionNamespace> namespaces = new ConcurrentHashMap<>(Map.of(OElib.MODID, DEFAULT));
+    private static final ExecutorService optimizerExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "OELib-ExpressionOptimizer");
+        t.setDaemon(true);
+        return t;
+    });
+    private static final ExecutorService precompileExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "OELib-ExpressionPrecompiler");
+        t.setDaemon(true);
+        t.setContextClassLoader(ExpressionEngine.class.getClassLoader());
+        return t;
+    });
+    private static final ForkJoinPool compilerPool = new ForkJoinPool(
+            Math.max(1, Runtime.getRuntime().availableProcessors() - 1),
+            pool -> {
+                ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                t.setName("OELib-ExpressionCompiler-" + t.getPoolIndex());
+                // 工作线程需要能加载模组中的函数类
+                t.setContextClassLoader(ExpressionEngine.class.getClassLoader());
+                return t;
+            },
+            null, false);
+    private static volatile int optimizationThreshold = 0;
+
+    /**
+     * 获取命名空间对应的引擎实例，不存在时创建。
+     * <p>
+     * 新实例只包含核心函数，需要通过 {@link ExpressionNamespace#registerFunctionClass(Class)} 注册函数，
+     * 并调用 {@link ExpressionNamespace#initialize()} 后才能求值。以 {@code oelib} 为命名空间时返回默认实例。
+     * </p>
+     *
+     * @param namespace 命名空间，通常为模组ID
+     * @return 引擎实例
+     */
+    public static ExpressionNamespace forNamespace(String namespace) {
+        if (namespace == null) {
+            throw new NullPointerException("Namespace cannot be null");
+        }
+        return namespaces.computeIfAbsent(namespace, name -> new ExpressionNamespace(name, false));
+    }
+
+    /**
+     * 获取默认引擎实例，数据包中的表达式都在该实例中求值。
+     *
+     * @return 默认引擎实例
+     */
+    public static ExpressionNamespace getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * 获取所有已创建的命名空间。
+     *
+     * @return 命名空间集合
+     */
+    public static Set<String> getNamespaces() {
+        return Collections.unmodifiableSet(new TreeSet<>(namespaces.keySet()));
+    }
 
     /**
      * 注册包含 {@link ExpressionFunction} 注解方法的类。
@@ -38,79 +91,24 @@ public class ExpressionEngine {
      * @param modid 模组ID
      */
     public static void registerFunctionClass(Class<?> clazz, String modid) {
-        if (clazz == null) {
-            throw new NullPointerException("Function class cannot be null");
-        }
-        if (modid == null) {
-            throw new NullPointerException("Mod ID cannot be null");
-        }
-
-        registeredClasses.add(clazz);
-        if (initialized) {
-            scanClass(clazz, modid);
-        }
+        DEFAULT.registerFunctionClass(clazz, modid);
     }
 
     /**
      * 初始化表达式引擎。
      */
     public static void initialize() {
-        initialize(null);
+        DEFAULT.initialize();
     }
 
     /**
      * 智能初始化表达式引擎。
      *
      * @param requiredFunctions 需要的函数集合，null 表示全量注册
+     * @see ExpressionNamespace#initialize(Set)
      */
     public static void initialize(Set<String> requiredFunctions) {
-        functionMap.clear();
-        compiledExpressions.clear();
-        parserContext = new ParserContext();
-
-        // 确保核心函数始终被包含在智能注册中
-        if (requiredFunctions != null) {
-            Set<String> allRequiredFunctions = new HashSet<>(requiredFunctions);
-            allRequiredFunctions.addAll(FunctionUsageAnalyzer.getCoreRequiredFunctions());
-            requiredFunctions = allRequiredFunctions;
-        }
-
-        // 触发函数注册事件
-        FunctionRegistryEvent event = requiredFunctions != null ?
-                new FunctionRegistryEvent(requiredFunctions) :
-                new FunctionRegistryEvent();
-        MinecraftForge.EVENT_BUS.post(event);
-
-        // 注册核心函数类（确保始终可用）
-        if (event.isSmartRegistration()) {
-            scanClassSmart(CoreFunctions.class, OElib.MODID, event.getRequiredFunctions());
-        } else {
-            scanClass(CoreFunctions.class, OElib.MODID);
-        }
-
-        // 注册事件中收集的函数类
-        for (Pair<Class<?>, String> entry : event.getRegisteredClasses()) {
-            if (event.isSmartRegistration()) {
-                scanClassSmart(entry.getLeft(), entry.getRight(), event.getRequiredFunctions());
-            } else {
-                scanClass(entry.getLeft(), entry.getRight());
-            }
-        }
-
-        for (Class<?> clazz : registeredClasses) {
-            if (clazz == CoreFunctions.class) {
-                continue;
-            }
-            if (event.isSmartRegistration()) {
-                scanClassSmart(clazz, "unknown", event.getRequiredFunctions());
-            } else {
-                scanClass(clazz, "unknown");
-            }
-        }
-
-        initialized = true;
-        OElib.LOGGER.info("Expression engine initialized with {} available functions (smart: {})",
-                functionMap.size(), event.isSmartRegistration());
+        DEFAULT.initialize(requiredFunctions);
     }
 
     /**
@@ -121,7 +119,7 @@ public class ExpressionEngine {
      * @return 评估结果
      */
     public static Object evaluate(String expression, Map<String, Object> context) {
-        return evaluate(expression, context, true);
+        return DEFAULT.evaluate(expression, context);
     }
 
     /**
@@ -133,239 +131,396 @@ public class ExpressionEngine {
      * @return 评估结果
      */
     public static Object evaluate(String expression, Map<String, Object> context, boolean logErrors) {
-        try {
-            if (!initialized) {
-                // 如果表达式引擎未初始化，只处理核心函数
-                if (expression.contains("isModLoaded")) {
-                    // 临时初始化只包含核心函数
-                    initializeCore();
-                } else {
-                    if (logErrors) {
-                        OElib.LOGGER.warn("Expression engine not initialized, skipping expression: {}", expression);
-                    }
-                    return null;
-                }
-            }
+        return DEFAULT.evaluate(expression, context, logErrors);
+    }
 
-            Serializable compiled = compiledExpressions.computeIfAbsent(expression,
-                    expr -> MVEL.compileExpression(expr, parserContext));
+    /**
+     * 在变量帧上评估表达式。
+     *
+     * @param expression 表达式字符串
+     * @param frame      变量帧
+     * @param logErrors  是否记录错误日志
+     * @return 评估结果
+     */
+    public static Object evaluate(String expression, VariableFrame frame, boolean logErrors) {
+        return DEFAULT.evaluate(expression, frame, logErrors);
+    }
 
-            return MVEL.executeExpression(compiled, context != null ? context : new HashMap<>());
-        } catch (Exception e) {
-            if (logErrors) {
-                OElib.LOGGER.error("Failed to evaluate expression: {}", expression, e);
-            }
-            throw e;
-        }
+    /**
+     * 在多组上下文上批量评估同一个表达式。
+     *
+     * @param expression 表达式字符串
+     * @param contexts   上下文变量列表
+     * @param parallel   是否允许并行求值，见 {@link CompiledExpression#executeAll(Collection, boolean)}
+     * @return 评估结果，与上下文一一对应；引擎未初始化时全部为 null
+     */
+    public static List<Object> evaluateAll(String expression, Collection<? extends Map<String, ?>> contexts,
+                                           boolean parallel) {
+        return DEFAULT.evaluateAll(expression, contexts, parallel);
     }
 
     /**
-     * 临时初始化核心函数（仅用于模组加载检查）。
+     * 编译表达式并返回可复用的句柄。
+     * <p>
+     * 仅在格式上不同的表达式共享同一编译结果，调用方应持有返回的句柄，
+     * 在热路径上直接调用 {@link CompiledExpression#execute(Map)}。
+     * </p>
+     *
+     * @param expression 表达式字符串
+     * @return 已编译表达式句柄
+     * @throws RuntimeException 表达式无法编译时抛出 MVEL 的编译异常
      */
-    private static void initializeCore() {
-        if (functionMap.isEmpty()) {
-            scanClass(CoreFunctions.class, OElib.MODID);
-            OElib.LOGGER.debug("Initialized core functions for mod loading checks");
-        }
+    public static CompiledExpression compile(String expression) {
+        return DEFAULT.compile(expression);
     }
 
     /**
-     * 检查表达式是否有效。
+     * 在默认实例中将一个数据条目的变量、条件和动作编译为规则。
+     *
+     * @param vars       变量映射，按迭代顺序求值，可以为 null
+     * @param conditions 条件映射，可以为 null
+     * @param actions    动作列表，可以为 null
+     * @return 已编译的规则
+     * @see ExpressionNamespace#compileRule(Map, Map, List)
+     */
+    public static CompiledRule compileRule(Map<String, String> vars, Map<String, String> conditions, List<String> actions) {
+        return DEFAULT.compileRule(vars, conditions, actions);
+    }
+
+    /**
+     * 使用强类型解析上下文编译表达式。
+     * <p>
+     * 热路径上应持有返回的句柄并调用 {@link CompiledExpression#executeBoolean(VariableFrame)} 等方法，
+     * 避免每次求值都查找缓存。只由数值、布尔输入和基本运算构成的表达式以原始类型求值，不经过 MVEL。
+     * </p>
      *
      * @param expression 表达式字符串
-     * @return 是否有效
+     * @param resultType 期望的结果类型，例如 {@code boolean.class}
+     * @param inputTypes 输入变量的类型
+     * @return 已编译表达式句柄
+     * @throws RuntimeException 表达式无法编译或类型不匹配时抛出 MVEL 的编译异常
+     * @see ExpressionNamespace#compile(String, Class, Map)
      */
-    public static boolean isValidExpression(String expression) {
-        try {
-            evaluate(expression, new HashMap<>(), false);
-            return true;
-        } catch (Exception e) {
-            return false;
-        }
+    public static CompiledExpression compile(String expression, Class<?> resultType, Map<String, Class<?>> inputTypes) {
+        return DEFAULT.compile(expression, resultType, inputTypes);
     }
 
     /**
-     * 获取所有已注册的函数。
+     * 以强类型编译并求值布尔表达式。
      *
-     * @return 函数映射的副本
+     * @param expression 表达式字符串
+     * @param inputTypes 输入变量的类型
+     * @param frame      变量帧
+     * @return 求值结果
      */
-    public static Map<String, Method> getAllFunctions() {
-        return new HashMap<>(functionMap);
+    public static boolean evaluateBoolean(String expression, Map<String, Class<?>> inputTypes, VariableFrame frame) {
+        return DEFAULT.evaluateBoolean(expression, inputTypes, frame);
     }
 
     /**
-     * 清空所有已注册的函数和类。
+     * 以强类型编译并求值布尔表达式。
+     *
+     * @param expression 表达式字符串
+     * @param inputTypes 输入变量的类型
+     * @param context    上下文变量
+     * @return 求值结果
      */
-    public static void clear() {
-        functionMap.clear();
-        registeredClasses.clear();
-        compiledExpressions.clear();
-        initialized = false;
+    public static boolean evaluateBoolean(String expression, Map<String, Class<?>> inputTypes, Map<String, Object> context) {
+        return DEFAULT.evaluateBoolean(expression, inputTypes, context);
     }
 
     /**
-     * 热重载函数。
+     * 以强类型编译并求值数值表达式。
+     *
+     * @param expression 表达式字符串
+     * @param inputTypes 输入变量的类型
+     * @param frame      变量帧
+     * @return 求值结果
      */
-    public static void hotReload() {
-        clear();
-        initialize();
-        OElib.LOGGER.debug("Expression engine hot reload completed");
+    public static double evaluateDouble(String expression, Map<String, Class<?>> inputTypes, VariableFrame frame) {
+        return DEFAULT.evaluateDouble(expression, inputTypes, frame);
     }
 
     /**
-     * 创建表达式上下文。
-     * <p>
-     * 将变量映射中的表达式求值并添加到上下文中。
-     * </p>
+     * 以强类型编译并求值数值表达式。
      *
-     * @param vars 变量映射
-     * @return 上下文对象
+     * @param expression 表达式字符串
+     * @param inputTypes 输入变量的类型
+     * @param context    上下文变量
+     * @return 求值结果
      */
-    public static Map<String, Object> createContext(Map<String, String> vars) {
-        Map<String, Object> context = new HashMap<>();
-
-        if (vars != null) {
-            for (Map.Entry<String, String> var : vars.entrySet()) {
-                try {
-                    Object value = evaluate(var.getValue(), context, false);
-                    context.put(var.getKey(), value);
-                } catch (Exception e) {
-                    OElib.LOGGER.debug("Failed to evaluate variable {}: {}", var.getKey(), e.getMessage());
-                    context.put(var.getKey(), var.getValue()); // 使用原始字符串作为后备
-                }
-            }
-        }
+    public static double evaluateDouble(String expression, Map<String, Class<?>> inputTypes, Map<String, Object> context) {
+        return DEFAULT.evaluateDouble(expression, inputTypes, context);
+    }
 
-        return context;
+    /**
+     * 以强类型编译并求值整数表达式。
+     *
+     * @param expression 表达式字符串
+     * @param inputTypes 输入变量的类型
+     * @param frame      变量帧
+     * @return 求值结果
+     */
+    public static int evaluateInt(String expression, Map<String, Class<?>> inputTypes, VariableFrame frame) {
+        return DEFAULT.evaluateInt(expression, inputTypes, frame);
     }
 
     /**
-     * 检查条件是否满足。
+     * 以强类型编译并求值整数表达式。
+     *
+     * @param expression 表达式字符串
+     * @param inputTypes 输入变量的类型
+     * @param context    上下文变量
+     * @return 求值结果
+     */
+    public static int evaluateInt(String expression, Map<String, Class<?>> inputTypes, Map<String, Object> context) {
+        return DEFAULT.evaluateInt(expression, inputTypes, context);
+    }
+
+    /**
+     * 设置已编译表达式缓存的容量。
+     *
+     * @param capacity 运行时表达式的最大缓存条目数，预编译的表达式不计入
+     * @see ExpressionNamespace#setCacheCapacity(int)
+     */
+    public static void setCacheCapacity(int capacity) {
+        DEFAULT.setCacheCapacity(capacity);
+    }
+
+    /**
+     * 获取已编译表达式缓存的统计信息。
      * <p>
-     * 支持通配符匹配（*）和表达式求值。
+     * 包含命中率、淘汰次数和驻留条目数，用于为生产环境确定缓存容量。
      * </p>
      *
-     * @param conditions 条件映射
-     * @param context    上下文对象
-     * @return 是否所有条件都满足
+     * @return 缓存统计信息
      */
-    public static boolean checkConditions(Map<String, String> conditions, Map<String, Object> context) {
-        if (conditions == null || conditions.isEmpty()) {
-            return true;
-        }
+    public static ExpressionCache.Stats getCacheStats() {
+        return DEFAULT.getCacheStats();
+    }
 
-        for (Map.Entry<String, String> condition : conditions.entrySet()) {
-            String key = condition.getKey();
-            String expression = condition.getValue();
+    /**
+     * 设置分层优化的晋升阈值。
+     * <p>
+     * 大于 0 时启用分层执行：表达式先以反射访问器执行，调用次数达到阈值后
+     * 在后台使用 ASM 优化器重新编译并替换。少量热点表达式因此获得字节码访问器，
+     * 大量冷门表达式则不必承担字节码生成的开销。
+     * 小于等于 0 时关闭分层执行，使用 MVEL 默认优化器（默认值）。
+     * </p>
+     *
+     * @param invocations 晋升所需的调用次数
+     */
+    public static void setOptimizationThreshold(int invocations) {
+        optimizationThreshold = invocations;
+    }
 
-            Object actualValue = context.get(key);
-            Object expectedValue;
+    /**
+     * 获取分层优化的晋升阈值。
+     *
+     * @return 晋升所需的调用次数，小于等于 0 表示未启用
+     */
+    public static int getOptimizationThreshold() {
+        return optimizationThreshold;
+    }
 
+    /**
+     * 在后台使用 ASM 优化器重新编译热点表达式。
+     */
+    static void scheduleOptimization(CompiledExpression expression, CompiledExpression.Binding baseline) {
+        optimizerExecutor.execute(() -> {
             try {
-                expectedValue = evaluate(expression, context, false);
+                CompiledExpression.Binding optimized = expression.owner().bind(expression.getSource(),
+                        expression.signature(), CompiledExpression.Tier.OPTIMIZED);
+                if (optimized.generation() == baseline.generation() && expression.replace(baseline, optimized)) {
+                    OElib.LOGGER.debug("Promoted hot expression to optimized tier: {}", expression.getSource());
+                }
             } catch (Exception e) {
-                expectedValue = expression;
+                OElib.LOGGER.debug("Failed to optimize expression {}: {}", expression.getSource(), e.getMessage());
             }
+        });
+    }
 
-            // 支持通配符匹配
-            if (expectedValue instanceof String expectedStr && expectedStr.contains("*")) {
-                String pattern = expectedStr.replace("*", ".*");
-                if (actualValue == null || !actualValue.toString().matches(pattern)) {
-                    return false;
-                }
-            } else if (!java.util.Objects.equals(expectedValue, actualValue)) {
-                return false;
-            }
-        }
-        return true;
+    /**
+     * 获取引擎当前代数。
+     * <p>
+     * 每次初始化或清空引擎时递增，用于判断已编译句柄是否需要重新编译。
+     * </p>
+     *
+     * @return 当前代数
+     */
+    public static int getGeneration() {
+        return DEFAULT.getGeneration();
     }
 
     /**
-     * 执行动作列表。
+     * 检查表达式是否有效。
      * <p>
-     * 依次执行动作列表中的每个表达式。
+     * 只编译不执行，因此不会调用表达式中的函数，也不会因缺少上下文变量而失败。
      * </p>
      *
-     * @param actions 动作列表
-     * @param context 上下文对象
+     * @param expression 表达式字符串
+     * @return 是否有效
      */
-    public static void executeActions(List<String> actions, Map<String, Object> context) {
-        if (actions == null) return;
+    public static boolean isValidExpression(String expression) {
+        return DEFAULT.isValidExpression(expression);
+    }
 
-        for (String action : actions) {
-            try {
-                evaluate(action, context);
-            } catch (Exception e) {
-                OElib.LOGGER.error("Failed to execute action: {}", action, e);
-            }
-        }
+    /**
+     * 编译表达式并返回编译错误。
+     * <p>
+     * 编译结果会进入缓存，之后的求值无需再次编译。
+     * </p>
+     *
+     * @param expression 表达式字符串
+     * @return 错误信息的第一行，编译成功时为 null
+     */
+    public static String validateExpression(String expression) {
+        return DEFAULT.validateExpression(expression);
     }
 
     /**
-     * 检查模组加载条件。
+     * 在后台线程池中并行预编译表达式。
+     *
+     * @param expressions 按来源分组的表达式
+     * @param <K>         来源类型
+     * @return 按来源分组的编译错误（表达式到错误信息），没有错误的来源不会出现
+     * @see ExpressionNamespace#precompile(Map)
+     */
+    public static <K> Map<K, Map<String, String>> precompile(Map<K, ? extends Collection<String>> expressions) {
+        return DEFAULT.precompile(expressions);
+    }
+
+    /**
+     * 在编译线程池中执行并行任务并等待完成。
+     *
+     * @param task 任务
+     */
+    static void runParallel(Runnable task) {
+        compilerPool.submit(task).join();
+    }
+
+    /**
+     * 在后台预编译线程中依次执行任务，不等待完成。
      * <p>
-     * 检查变量映射中是否包含 modLoaded 条件，并验证其结果。
+     * 任务可以通过 {@link #runParallel} 使用编译线程池，同一时间只有一个任务在执行。
      * </p>
      *
-     * @param vars 变量映射
-     * @return 是否应该加载（true表示应该加载，false表示不应该加载）
+     * @param task 任务
      */
-    public static boolean checkModLoadedCondition(Map<String, String> vars) {
-        if (vars == null || !vars.containsKey("modLoaded")) {
-            return true; // 没有条件则默认加载
-        }
+    static void runInBackground(Runnable task) {
+        precompileExecutor.execute(task);
+    }
 
-        try {
-            Map<String, Object> tempContext = new HashMap<>();
-            Object result = evaluate(vars.get("modLoaded"), tempContext, false);
-            return !Boolean.FALSE.equals(result);
-        } catch (Exception e) {
-            OElib.LOGGER.debug("Failed to evaluate modLoaded condition: {}", e.getMessage());
-            return true; // 出错时默认加载
-        }
+    /**
+     * 获取编译线程池的并行度。
+     *
+     * @return 并行度
+     */
+    static int getParallelism() {
+        return compilerPool.getParallelism();
+    }
+
+    /**
+     * 获取所有已注册的函数。
+     *
+     * @return 函数映射的副本
+     */
+    public static Map<String, Method> getAllFunctions() {
+        return DEFAULT.getAllFunctions();
     }
 
-    private static void scanClassSmart(Class<?> clazz, String modid, Set<String> requiredFunctions) {
-        scanClassInternal(clazz, modid, requiredFunctions, true);
+    /**
+     * 清空默认实例中所有已注册的函数和类，其他命名空间不受影响。
+     */
+    public static void clear() {
+        DEFAULT.clear();
     }
 
-    private static void scanClass(Class<?> clazz, String modid) {
-        scanClassInternal(clazz, modid, null, false);
+    /**
+     * 热重载默认实例的函数，其他命名空间不受影响。
+     *
+     * @see ExpressionNamespace#hotReload()
+     */
+    public static void hotReload() {
+        DEFAULT.hotReload();
     }
 
+    /**
+     * 在默认实例中创建表达式上下文。
+     *
+     * @param vars 变量映射
+     * @return 上下文对象
+     * @see ExpressionNamespace#createContext(Map)
+     */
+    public static Map<String, Object> createContext(Map<String, String> vars) {
+        return DEFAULT.createContext(vars);
+    }
 
-    private static void scanClassInternal(Class<?> clazz, String modid, Set<String> requiredFunctions, boolean smart) {
-        for (Method method : clazz.getDeclaredMethods()) {
-            ExpressionFunction ann = method.getAnnotation(ExpressionFunction.class);
-            if (ann == null) continue;
+    /**
+     * 在默认实例中于变量帧上创建表达式上下文。
+     *
+     * @param vars  变量映射
+     * @param frame 目标变量帧
+     * @see ExpressionNamespace#createContext(Map, VariableFrame)
+     */
+    public static void createContext(Map<String, String> vars, VariableFrame frame) {
+        DEFAULT.createContext(vars, frame);
+    }
 
-            // 验证方法必须是静态的
-            if (!Modifier.isStatic(method.getModifiers())) {
-                OElib.LOGGER.warn("Expression function must be static: {}.{}", clazz.getSimpleName(), method.getName());
-                continue;
-            }
+    /**
+     * 在默认实例中检查条件是否满足。
+     *
+     * @param conditions 条件映射
+     * @param context    上下文对象
+     * @return 是否所有条件都满足
+     * @see ExpressionNamespace#checkConditions(Map, Map)
+     */
+    public static boolean checkConditions(Map<String, String> conditions, Map<String, Object> context) {
+        return DEFAULT.checkConditions(conditions, context);
+    }
 
-            // 获取函数名
-            String name = ann.value().isEmpty() ? method.getName() : ann.value();
+    /**
+     * 在默认实例中于变量帧上检查条件是否满足。
+     *
+     * @param conditions 条件映射
+     * @param frame      变量帧
+     * @return 是否所有条件都满足
+     * @see ExpressionNamespace#checkConditions(Map, VariableFrame)
+     */
+    public static boolean checkConditions(Map<String, String> conditions, VariableFrame frame) {
+        return DEFAULT.checkConditions(conditions, frame);
+    }
 
-            // 智能注册模式：检查是否需要该函数
-            if (smart && (requiredFunctions == null || !requiredFunctions.contains(name))) {
-                OElib.LOGGER.debug("Skipping unused function: {} ({})", name, clazz.getSimpleName());
-                continue;
-            }
+    /**
+     * 在默认实例中执行动作列表。
+     *
+     * @param actions 动作列表
+     * @param context 上下文对象
+     * @see ExpressionNamespace#executeActions(List, Map)
+     */
+    public static void executeActions(List<String> actions, Map<String, Object> context) {
+        DEFAULT.executeActions(actions, context);
+    }
 
-            // 冲突检查
-            if (functionMap.containsKey(name)) {
-                Method conflict = functionMap.get(name);
-                OElib.LOGGER.warn("Function name conflict: {} conflicts with {}.{}",
-                        name, conflict.getDeclaringClass().getSimpleName(), conflict.getName());
-                continue;
-            }
+    /**
+     * 在默认实例中执行单个动作，失败时记录错误日志。
+     *
+     * @param action  动作表达式
+     * @param context 上下文对象
+     * @return 是否执行成功
+     */
+    static boolean executeAction(String action, Map<String, Object> context) {
+        return DEFAULT.executeAction(action, context);
+    }
 
-            functionMap.put(name, method);
-            parserContext.addImport(name, method);
-            OElib.LOGGER.debug("Registered expression function{}: {} ({})",
-                    smart ? " (smart)" : "", name, clazz.getSimpleName());
-        }
+    /**
+     * 在默认实例中检查模组加载条件。
+     *
+     * @param vars 变量映射
+     * @return 是否应该加载（true表示应该加载，false表示不应该加载）
+     * @see ExpressionNamespace#checkModLoadedCondition(Map)
+     */
+    public static boolean checkModLoadedCondition(Map<String, String> vars) {
+        return DEFAULT.checkModLoadedCondition(vars);
     }
-}
\ No newline at end of file
+}
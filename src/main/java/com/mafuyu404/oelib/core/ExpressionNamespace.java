@@ -0,0 +1,1031 @@
+package com.mafuyu404.oelib.core;
+
+import com.mafuyu404.oelib.OElib;
+import com.mafuyu404.oelib.api.ExpressionFunction;
+import com.mafuyu404.oelib.event.FunctionRegistryEvent;
+import com.mafuyu404.oelib.functions.CoreFunctions;
+import com.mafuyu404.oelib.util.ExpressionTokenizer;
+import com.mafuyu404.oelib.util.FunctionUsageAnalyzer;
+import com.mafuyu404.oelib.util.GlobMatcher;
+import net.minecraftforge.common.MinecraftForge;
+import org.apache.commons.lang3.tuple.Pair;
+import org.mvel2.CompileException;
+import org.mvel2.MVEL;
+import org.mvel2.ParserConfiguration;
+import org.mvel2.ParserContext;
+import org.mvel2.ast.ASTNode;
+import org.mvel2.compiler.ExecutableLiteral;
+
+import java.io.Serializable;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * 表达式引擎实例。
+ * <p>
+ * 每个实例拥有独立的函数表、已编译表达式缓存和代数，通过 {@link ExpressionEngine#forNamespace(String)}
+ * 按模组命名空间获取。一个命名空间的重载、清空和缓存失效不会影响其他命名空间，
+ * 函数名也只需在命名空间内唯一，函数表更小，解析更快。
+ * </p>
+ * <p>
+ * {@link ExpressionEngine} 的静态方法委托给默认实例，数据包中的变量、条件和动作都在默认实例中求值。
+ * 其他实例同样可以通过 {@link #compileRule}、{@link #createContext}、{@link #checkConditions}
+ * 和 {@link #executeActions} 按自己的函数表执行规则。
+ * 只有默认实例在初始化时触发 {@link FunctionRegistryEvent}，其他实例只包含核心函数和通过
+ * {@link #registerFunctionClass(Class)} 直接注册的函数。
+ * </p>
+ */
+public final class ExpressionNamespace {
+
+    private final String namespace;
+    private final boolean isDefault;
+    private final Set<Class<?>> registeredClasses = ConcurrentHashMap.newKeySet();
+    private final ExpressionCache compiledExpressions = new ExpressionCache(ExpressionCache.DEFAULT_CAPACITY);
+    private volatile int cacheCapacity = ExpressionCache.DEFAULT_CAPACITY;
+    private volatile int precompiledCount;
+    private final Object writeLock = new Object();
+    // 按输入类型映射实例缓存的类型签名，并发覆盖只会导致重新构建
+    private final SignatureEntry[] recentSignatures = new SignatureEntry[64];
+    private volatile EngineSnapshot snapshot = EngineSnapshot.empty();
+
+    ExpressionNamespace(String namespace, boolean isDefault) {
+        this.namespace = namespace;
+        this.isDefault = isDefault;
+    }
+
+    /**
+     * 获取命名空间。
+     *
+     * @return 命名空间，通常为模组ID
+     */
+    public String getNamespace() {
+        return namespace;
+    }
+
+    /**
+     * 注册包含 {@link ExpressionFunction} 注解方法的类。
+     *
+     * @param clazz 要注册的类
+     */
+    public void registerFunctionClass(Class<?> clazz) {
+        registerFunctionClass(clazz, namespace);
+    }
+
+    /**
+     * 注册包含 {@link ExpressionFunction} 注解方法的类。
+     *
+     * @param clazz 要注册的类
+     * @param modid 模组ID
+     */
+    public void registerFunctionClass(Class<?> clazz, String modid) {
+        if (clazz == null) {
+            throw new NullPointerException("Function class cannot be null");
+        }
+        if (modid == null) {
+            throw new NullPointerException("Mod ID cannot be null");
+        }
+
+        registeredClasses.add(clazz);
+        synchronized (writeLock) {
+            EngineSnapshot current = snapshot;
+            if (current.initialized()) {
+                EngineSnapshot.Builder builder = new EngineSnapshot.Builder(current);
+                scanClass(builder, clazz, modid);
+                snapshot = builder.build(current, true);
+            }
+        }
+    }
+
+    /**
+     * 初始化表达式引擎。
+     */
+    public void initialize() {
+        initialize(null);
+    }
+
+    /**
+     * 智能初始化表达式引擎。
+     * <p>
+     * 新的函数表在独立的快照中构建，完成后整体替换当前快照。
+     * 构建期间其他线程继续使用旧快照求值。已编译的表达式在下次执行时检查其调用的函数，
+     * 只有调用了被添加、移除或替换的函数的表达式才会按新快照重新编译，其余表达式沿用原编译结果。
+     * </p>
+     *
+     * @param requiredFunctions 需要的函数集合，null 表示全量注册
+     */
+    public void initialize(Set<String> requiredFunctions) {
+        synchronized (writeLock) {
+            EngineSnapshot.Builder builder = new EngineSnapshot.Builder();
+            boolean smart = build(builder, requiredFunctions);
+            snapshot = builder.build(snapshot, true);
+            Set<String> changed = snapshot.changedFunctions();
+            OElib.LOGGER.info("Expression engine '{}' initialized with {} available functions (smart: {}, {} changed)",
+                    namespace, builder.size(), smart, changed.size());
+            OElib.LOGGER.debug("Changed functions: {}", changed);
+        }
+    }
+
+    private boolean build(EngineSnapshot.Builder builder, Set<String> requiredFunctions) {
+        // 确保核心函数始终被包含在智能注册中
+        if (requiredFunctions != null) {
+            Set<String> allRequiredFunctions = new HashSet<>(requiredFunctions);
+            allRequiredFunctions.addAll(FunctionUsageAnalyzer.getCoreRequiredFunctions());
+            requiredFunctions = allRequiredFunctions;
+        }
+
+        // 触发函数注册事件，其他命名空间只使用直接注册的函数类
+        FunctionRegistryEvent event = requiredFunctions != null ?
+                new FunctionRegistryEvent(requiredFunctions) :
+                new FunctionRegistryEvent();
+        if (isDefault) {
+            MinecraftForge.EVENT_BUS.post(event);
+        }
+
+        // 注册核心函数类（确保始终可用）
+        if (event.isSmartRegistration()) {
+            scanClassSmart(builder, CoreFunctions.class, OElib.MODID, event.getRequiredFunctions());
+        } else {
+            scanClass(builder, CoreFunctions.class, OElib.MODID);
+        }
+
+        // 注册事件中收集的函数类
+        for (Pair<Class<?>, String> entry : event.getRegisteredClasses()) {
+            if (event.isSmartRegistration()) {
+                scanClassSmart(builder, entry.getLeft(), entry.getRight(), event.getRequiredFunctions());
+            } else {
+                scanClass(builder, entry.getLeft(), entry.getRight());
+            }
+        }
+
+        String modid = isDefault ? "unknown" : namespace;
+        for (Class<?> clazz : registeredClasses) {
+            if (clazz == CoreFunctions.class) {
+                continue;
+            }
+            if (event.isSmartRegistration()) {
+                scanClassSmart(builder, clazz, modid, event.getRequiredFunctions());
+            } else {
+                scanClass(builder, clazz, modid);
+            }
+        }
+
+        return event.isSmartRegistration();
+    }
+
+    /**
+     * 评估表达式。
+     *
+     * @param expression 表达式字符串
+     * @param context    上下文变量
+     * @return 评估结果
+     */
+    public Object evaluate(String expression, Map<String, Object> context) {
+        return evaluate(expression, context, true);
+    }
+
+    /**
+     * 评估表达式。
+     *
+     * @param expression 表达式字符串
+     * @param context    上下文变量
+     * @param logErrors  是否记录错误日志
+     * @return 评估结果
+     */
+    public Object evaluate(String expression, Map<String, Object> context, boolean logErrors) {
+        try {
+            CompiledExpression compiled = compileIfReady(expression, logErrors);
+            return compiled != null ? compiled.execute(context) : null;
+        } catch (Exception e) {
+            if (logErrors) {
+                OElib.LOGGER.error("Failed to evaluate expression: {}", expression, e);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 在变量帧上评估表达式。
+     *
+     * @param expression 表达式字符串
+     * @param frame      变量帧
+     * @param logErrors  是否记录错误日志
+     * @return 评估结果
+     */
+    public Object evaluate(String expression, VariableFrame frame, boolean logErrors) {
+        try {
+            CompiledExpression compiled = compileIfReady(expression, logErrors);
+            return compiled != null ? compiled.execute(frame) : null;
+        } catch (Exception e) {
+            if (logErrors) {
+                OElib.LOGGER.error("Failed to evaluate expression: {}", expression, e);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 在多组上下文上批量评估同一个表达式。
+     *
+     * @param expression 表达式字符串
+     * @param contexts   上下文变量列表
+     * @param parallel   是否允许并行求值，见 {@link CompiledExpression#executeAll(Collection, boolean)}
+     * @return 评估结果，与上下文一一对应；引擎未初始化时全部为 null
+     */
+    public List<Object> evaluateAll(String expression, Collection<? extends Map<String, ?>> contexts, boolean parallel) {
+        try {
+            CompiledExpression compiled = compileIfReady(expression, true);
+            return compiled != null ? compiled.executeAll(contexts, parallel)
+                    : Collections.nCopies(contexts.size(), null);
+        } catch (Exception e) {
+            OElib.LOGGER.error("Failed to evaluate expression: {}", expression, e);
+            throw e;
+        }
+    }
+
+    /**
+     * 获取句柄，引擎未初始化时只处理核心函数。
+     *
+     * @param expression 表达式字符串
+     * @param logErrors  是否记录错误日志
+     * @return 已编译表达式句柄，引擎未初始化时为 null
+     */
+    CompiledExpression compileIfReady(String expression, boolean logErrors) {
+        if (!snapshot.initialized()) {
+            // 如果表达式引擎未初始化，只处理核心函数
+            if (expression.contains("isModLoaded")) {
+                // 临时初始化只包含核心函数
+                initializeCore();
+            } else {
+                if (logErrors) {
+                    OElib.LOGGER.warn("Expression engine not initialized, skipping expression: {}", expression);
+                }
+                return null;
+            }
+        }
+        return handle(expression);
+    }
+
+    /**
+     * 编译表达式并返回可复用的句柄。
+     * <p>
+     * 仅在格式上不同的表达式共享同一编译结果，调用方应持有返回的句柄，
+     * 在热路径上直接调用 {@link CompiledExpression#execute(Map)}。
+     * </p>
+     *
+     * @param expression 表达式字符串
+     * @return 已编译表达式句柄
+     * @throws RuntimeException 表达式无法编译时抛出 MVEL 的编译异常
+     */
+    public CompiledExpression compile(String expression) {
+        CompiledExpression compiled = handle(expression);
+        CompiledExpression.Binding binding = compiled.current();
+        if (binding.kind() == CompiledExpression.Kind.LITERAL) {
+            throw binding.error();
+        }
+        return compiled;
+    }
+
+    /**
+     * 从缓存中获取句柄，不检查引擎是否已初始化。
+     * <p>
+     * 编译失败的结果同样被缓存为字面量句柄，不会抛出异常。
+     * </p>
+     *
+     * @param expression 表达式字符串
+     * @return 已编译表达式句柄
+     */
+    CompiledExpression handle(String expression) {
+        if (expression == null) {
+            throw new NullPointerException("Expression cannot be null");
+        }
+        return compiledExpressions.computeIfAbsent(expression,
+                expr -> new CompiledExpression(this, expr, null, bind(expr, null)));
+    }
+
+    /**
+     * 检查引擎是否已完成初始化。
+     *
+     * @return 是否已初始化
+     */
+    public boolean isInitialized() {
+        return snapshot.initialized();
+    }
+
+    /**
+     * 使用强类型解析上下文编译表达式。
+     * <p>
+     * 表达式只能引用声明过的变量，运算和函数调用按声明的类型检查，
+     * 结果类型与期望类型不兼容时编译失败。期望 {@code double} 时接受任意数值类型。
+     * </p>
+     *
+     * @param expression 表达式字符串
+     * @param resultType 期望的结果类型，例如 {@code boolean.class}
+     * @param inputTypes 输入变量的类型
+     * @return 已编译表达式句柄
+     * @throws RuntimeException 表达式无法编译或类型不匹配时抛出 MVEL 的编译异常
+     */
+    public CompiledExpression compile(String expression, Class<?> resultType, Map<String, Class<?>> inputTypes) {
+        if (expression == null) {
+            throw new NullPointerException("Expression cannot be null");
+        }
+        SignatureEntry entry = signature(resultType, inputTypes != null ? inputTypes : Map.of());
+        TypeSignature signature = entry.signature();
+        CompiledExpression compiled = compiledExpressions.computeIfAbsent(expression, entry.key(),
+                expr -> new CompiledExpression(this, expr, signature, bind(expr, signature)));
+        CompiledExpression.Binding binding = compiled.current();
+        if (binding.kind() == CompiledExpression.Kind.LITERAL) {
+            throw binding.error();
+        }
+        return compiled;
+    }
+
+    /**
+     * 以强类型编译并求值布尔表达式。
+     *
+     * @param expression 表达式字符串
+     * @param inputTypes 输入变量的类型
+     * @param frame      变量帧
+     * @return 求值结果
+     */
+    public boolean evaluateBoolean(String expression, Map<String, Class<?>> inputTypes, VariableFrame frame) {
+        return compileTyped(expression, boolean.class, inputTypes).executeBoolean(frame);
+    }
+
+    /**
+     * 以强类型编译并求值布尔表达式。
+     *
+     * @param expression 表达式字符串
+     * @param inputTypes 输入变量的类型
+     * @param context    上下文变量
+     * @return 求值结果
+     */
+    public boolean evaluateBoolean(String expression, Map<String, Class<?>> inputTypes, Map<String, Object> context) {
+        return compileTyped(expression, boolean.class, inputTypes).executeBoolean(context);
+    }
+
+    /**
+     * 以强类型编译并求值数值表达式。
+     *
+     * @param expression 表达式字符串
+     * @param inputTypes 输入变量的类型
+     * @param frame      变量帧
+     * @return 求值结果
+     */
+    public double evaluateDouble(String expression, Map<String, Class<?>> inputTypes, VariableFrame frame) {
+        return compileTyped(expression, double.class, inputTypes).executeDouble(frame);
+    }
+
+    /**
+     * 以强类型编译并求值数值表达式。
+     *
+     * @param expression 表达式字符串
+     * @param inputTypes 输入变量的类型
+     * @param context    上下文变量
+     * @return 求值结果
+     */
+    public double evaluateDouble(String expression, Map<String, Class<?>> inputTypes, Map<String, Object> context) {
+        return compileTyped(expression, double.class, inputTypes).executeDouble(context);
+    }
+
+    /**
+     * 以强类型编译并求值整数表达式。
+     *
+     * @param expression 表达式字符串
+     * @param inputTypes 输入变量的类型
+     * @param frame      变量帧
+     * @return 求值结果
+     */
+    public int evaluateInt(String expression, Map<String, Class<?>> inputTypes, VariableFrame frame) {
+        return compileTyped(expression, int.class, inputTypes).executeInt(frame);
+    }
+
+    /**
+     * 以强类型编译并求值整数表达式。
+     *
+     * @param expression 表达式字符串
+     * @param inputTypes 输入变量的类型
+     * @param context    上下文变量
+     * @return 求值结果
+     */
+    public int evaluateInt(String expression, Map<String, Class<?>> inputTypes, Map<String, Object> context) {
+        return compileTyped(expression, int.class, inputTypes).executeInt(context);
+    }
+
+    /**
+     * 获取类型签名及其缓存键。
+     * <p>
+     * 调用方通常以常量映射声明输入类型，按映射实例缓存最近使用的签名，
+     * 重复求值时无需复制和排序映射，也无需重新拼接键。因此输入类型映射在使用后不应再修改。
+     * </p>
+     */
+    private SignatureEntry signature(Class<?> resultType, Map<String, Class<?>> inputTypes) {
+        int index = (System.identityHashCode(inputTypes) * 31 + resultType.hashCode()) & (recentSignatures.length - 1);
+        SignatureEntry entry = recentSignatures[index];
+        if (entry == null || entry.inputTypes() != inputTypes || entry.resultType() != resultType) {
+            TypeSignature signature = new TypeSignature(resultType, inputTypes);
+            entry = new SignatureEntry(inputTypes, resultType, signature, signature.key());
+            recentSignatures[index] = entry;
+        }
+        return entry;
+    }
+
+    private record SignatureEntry(Map<String, Class<?>> inputTypes, Class<?> resultType, TypeSignature signature,
+                                  String key) {
+    }
+
+    private CompiledExpression compileTyped(String expression, Class<?> resultType, Map<String, Class<?>> inputTypes) {
+        if (!snapshot.initialized()) {
+            if (expression.contains("isModLoaded")) {
+                initializeCore();
+            } else {
+                throw new IllegalStateException("Expression engine not initialized, cannot evaluate: " + expression);
+            }
+        }
+        return compile(expression, resultType, inputTypes);
+    }
+
+    /**
+     * 设置已编译表达式缓存的容量。
+     * <p>
+     * 最近一次 {@link #precompile 预编译}的表达式不计入该容量，缓存的实际容量为两者之和，
+     * 数据包中的表达式因此不会因数量超过容量而相互淘汰。
+     * </p>
+     *
+     * @param capacity 运行时表达式的最大缓存条目数
+     */
+    public void setCacheCapacity(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Cache capacity must be positive: " + capacity);
+        }
+        cacheCapacity = capacity;
+        compiledExpressions.setCapacity(capacity + precompiledCount);
+    }
+
+    /**
+     * 获取已编译表达式缓存的统计信息。
+     *
+     * @return 缓存统计信息
+     */
+    public ExpressionCache.Stats getCacheStats() {
+        return compiledExpressions.stats();
+    }
+
+    /**
+     * 使用当前代的解析配置编译表达式。
+     * <p>
+     * 编译失败时返回字面量分类的结果，而不是抛出异常，失败结果与成功结果一样被缓存。
+     * 给定类型签名时使用强类型解析上下文编译，并检查结果类型。
+     * </p>
+     */
+    CompiledExpression.Binding bind(String expression, TypeSignature signature) {
+        return bind(expression, signature, ExpressionEngine.getOptimizationThreshold() > 0
+                ? CompiledExpression.Tier.BASELINE : CompiledExpression.Tier.DEFAULT);
+    }
+
+    /**
+     * 将旧代的编译结果更新到当前代。
+     * <p>
+     * 表达式调用的函数在编译之后都没有变化时，原编译结果依然正确，直接推进其代数；否则重新编译。
+     * </p>
+     */
+    CompiledExpression.Binding rebind(String expression, TypeSignature signature, CompiledExpression.Binding stale) {
+        EngineSnapshot current = snapshot;
+        if (current.isUnchanged(stale.functions(), stale.generation())) {
+            stale.advance(current.generation());
+            return stale;
+        }
+        return bind(expression, signature);
+    }
+
+    CompiledExpression.Binding bind(String expression, TypeSignature signature, CompiledExpression.Tier tier) {
+        // 只读取一次快照，保证函数表、解析配置和代数来自同一次发布
+        EngineSnapshot current = snapshot;
+        int currentGeneration = current.generation();
+        ParserConfiguration configuration = current.configuration();
+        Set<String> functions = Set.copyOf(FunctionUsageAnalyzer.extractFunctionsFromExpression(expression));
+        String folded = ConstantFolder.fold(expression, current.functions(), configuration);
+        if (!folded.equals(expression)) {
+            OElib.LOGGER.debug("Folded expression '{}' into '{}'", expression, folded);
+        }
+
+        ParserContext context = new ParserContext(configuration);
+        if (signature != null) {
+            context.setStrictTypeEnforcement(true);
+            context.setStrongTyping(true);
+            signature.inputTypes().forEach(context::addInput);
+        }
+
+        Serializable compiled;
+        try {
+            compiled = MVEL.compileExpression(folded, context);
+        } catch (RuntimeException e) {
+            return CompiledExpression.Binding.literal(e, currentGeneration, functions, tier);
+        }
+
+        if (isConstant(compiled)) {
+            Object value = MVEL.executeExpression(compiled, new HashMap<>());
+            if (signature != null && !signature.accepts(value != null ? value.getClass() : null)) {
+                return CompiledExpression.Binding.literal(typeMismatch(expression, signature, value.getClass()),
+                        currentGeneration, functions, tier);
+            }
+            return CompiledExpression.Binding.constant(compiled, value, currentGeneration, functions, tier);
+        }
+
+        Set<String> variables = Set.copyOf(context.getInputs().keySet());
+        int[] slots = new int[variables.size()];
+        int index = 0;
+        for (String variable : variables) {
+            // 提前分配槽位，求值时变量帧无需再注册
+            slots[index++] = VariableFrame.slot(variable);
+        }
+
+        Class<?> resultType = compiled instanceof org.mvel2.compiler.CompiledExpression mvelCompiled
+                && mvelCompiled.getKnownEgressType() != null ? mvelCompiled.getKnownEgressType() : Object.class;
+        if (signature != null && !signature.accepts(resultType)) {
+            return CompiledExpression.Binding.literal(typeMismatch(expression, signature, resultType), currentGeneration, functions, tier);
+        }
+
+        PrimitiveExpression primitive = signature != null ? PrimitiveExpression.compile(folded, signature) : null;
+        return CompiledExpression.Binding.expression(compiled, variables, slots, resultType, currentGeneration, functions, tier,
+                primitive);
+    }
+
+    private static CompileException typeMismatch(String expression, TypeSignature signature, Class<?> actual) {
+        return new CompileException("Expression of type " + actual.getName() + " cannot be used as "
+                + signature.resultType().getName(), expression.toCharArray(), 0);
+    }
+
+    /**
+     * 检查编译结果是否只由字面量构成。
+     * <p>
+     * 存在函数导入时 MVEL 不会将字面量表达式优化为 {@link ExecutableLiteral}，因此还需检查语法树。
+     * </p>
+     */
+    private static boolean isConstant(Serializable compiled) {
+        if (compiled instanceof ExecutableLiteral) {
+            return true;
+        }
+        if (compiled instanceof org.mvel2.compiler.CompiledExpression mvelCompiled) {
+            ASTNode first = mvelCompiled.getFirstNode();
+            // isLiteralOnly() 对 1 + x 这类以字面量开头的运算同样返回 true，不能作为判断依据
+            return first != null && first.isLiteral() && first.nextASTNode == null;
+        }
+        return false;
+    }
+
+    /**
+     * 获取引擎当前代数。
+     * <p>
+     * 每次初始化或清空引擎时递增，用于判断已编译句柄是否需要重新编译。
+     * </p>
+     *
+     * @return 当前代数
+     */
+    public int getGeneration() {
+        return snapshot.generation();
+    }
+
+    /**
+     * 临时初始化核心函数（仅用于模组加载检查）。
+     */
+    private void initializeCore() {
+        if (!snapshot.functions().isEmpty()) {
+            return;
+        }
+        synchronized (writeLock) {
+            EngineSnapshot current = snapshot;
+            if (current.functions().isEmpty()) {
+                EngineSnapshot.Builder builder = new EngineSnapshot.Builder();
+                scanClass(builder, CoreFunctions.class, OElib.MODID);
+                snapshot = builder.build(current, current.initialized());
+                OElib.LOGGER.debug("Initialized core functions for mod loading checks");
+            }
+        }
+    }
+
+    /**
+     * 检查表达式是否有效。
+     * <p>
+     * 只编译不执行，因此不会调用表达式中的函数，也不会因缺少上下文变量而失败。
+     * </p>
+     *
+     * @param expression 表达式字符串
+     * @return 是否有效
+     */
+    public boolean isValidExpression(String expression) {
+        return validateExpression(expression) == null;
+    }
+
+    /**
+     * 编译表达式并返回编译错误。
+     * <p>
+     * 编译结果会进入缓存，之后的求值无需再次编译。
+     * </p>
+     *
+     * @param expression 表达式字符串
+     * @return 错误信息的第一行，编译成功时为 null
+     */
+    public String validateExpression(String expression) {
+        CompiledExpression.Binding binding = handle(expression).current();
+        if (binding.kind() != CompiledExpression.Kind.LITERAL) {
+            return null;
+        }
+        String message = binding.error().getMessage();
+        if (message == null) {
+            return binding.error().getClass().getSimpleName();
+        }
+        // MVEL 的错误信息包含源码片段和定位标记，只保留第一行
+        int newline = message.indexOf('\n');
+        return newline >= 0 ? message.substring(0, newline) : message;
+    }
+
+    /**
+     * 在后台线程池中并行预编译表达式。
+     * <p>
+     * 用于在重载阶段提前编译数据包中的所有表达式，避免首次求值时在主线程集中编译造成卡顿。
+     * 缓存容量按表达式数量扩大，预编译的结果不会被运行时的表达式挤出缓存。调用线程会等待所有编译完成。
+     * </p>
+     *
+     * @param expressions 按来源分组的表达式
+     * @param <K>         来源类型
+     * @return 按来源分组的编译错误（表达式到错误信息），没有错误的来源不会出现
+     */
+    public <K> Map<K, Map<String, String>> precompile(Map<K, ? extends Collection<String>> expressions) {
+        Set<String> distinct = new HashSet<>();
+        for (Collection<String> group : expressions.values()) {
+            distinct.addAll(group);
+        }
+        distinct.remove(null);
+        precompiledCount = distinct.size();
+        compiledExpressions.setCapacity(cacheCapacity + precompiledCount);
+
+        Map<K, Map<String, String>> errors = new ConcurrentHashMap<>();
+        ExpressionEngine.runParallel(() -> expressions.entrySet().parallelStream().forEach(entry -> {
+            for (String expression : entry.getValue()) {
+                if (expression == null) {
+                    continue;
+                }
+                String error = validateExpression(expression);
+                if (error != null) {
+                    errors.computeIfAbsent(entry.getKey(), k -> new ConcurrentSkipListMap<>()).put(expression, error);
+                }
+            }
+        }));
+        return errors;
+    }
+
+    /**
+     * 检查表达式调用的已注册函数是否都声明为线程安全。
+     *
+     * @param expression 表达式字符串
+     * @return 是否可以在多个线程中同时求值
+     */
+    boolean isThreadSafe(String expression) {
+        Map<String, Method> functions = snapshot.functions();
+        List<ExpressionTokenizer.Token> tokens = ExpressionTokenizer.tokenize(expression);
+        for (int i = 0; i + 1 < tokens.size(); i++) {
+            ExpressionTokenizer.Token name = tokens.get(i);
+            if (name.type() != ExpressionTokenizer.TokenType.IDENTIFIER || !tokens.get(i + 1).is('(')
+                    || (i > 0 && tokens.get(i - 1).is('.'))) {
+                continue;
+            }
+            Method method = functions.get(name.text());
+            if (method != null && !method.getAnnotation(ExpressionFunction.class).threadSafe()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 获取所有已注册的函数。
+     *
+     * @return 函数映射的副本
+     */
+    public Map<String, Method> getAllFunctions() {
+        return new HashMap<>(snapshot.functions());
+    }
+
+    /**
+     * 清空所有已注册的函数和类。
+     */
+    public void clear() {
+        synchronized (writeLock) {
+            registeredClasses.clear();
+            snapshot = new EngineSnapshot.Builder().build(snapshot, false);
+            compiledExpressions.clear();
+            VariablePlan.clearCache(this);
+            if (isDefault) {
+                FunctionUsageAnalyzer.clearCache();
+            }
+        }
+    }
+
+    /**
+     * 热重载函数。
+     * <p>
+     * 与先 {@link #clear()} 再 {@link #initialize()} 等价，但不会发布中间的空快照，
+     * 重载期间的求值始终能看到完整的函数表。
+     * </p>
+     */
+    public void hotReload() {
+        synchronized (writeLock) {
+            registeredClasses.clear();
+            initialize();
+        }
+        OElib.LOGGER.debug("Expression engine '{}' hot reload completed", namespace);
+    }
+
+    /**
+     * 将一个数据条目的变量、条件和动作编译为规则。
+     * <p>
+     * 对每 tick 大量执行的规则，应持有返回的规则并调用 {@link CompiledRule#execute(VariableFrame)}，
+     * 以替代依次调用 {@link #createContext}、{@link #checkConditions} 和 {@link #executeActions}。
+     * </p>
+     *
+     * @param vars       变量映射，按迭代顺序求值，可以为 null
+     * @param conditions 条件映射，可以为 null
+     * @param actions    动作列表，可以为 null
+     * @return 已编译的规则
+     */
+    public CompiledRule compileRule(Map<String, String> vars, Map<String, String> conditions, List<String> actions) {
+        return new CompiledRule(this, vars, conditions, actions);
+    }
+
+    /**
+     * 创建表达式上下文。
+     * <p>
+     * 将变量映射中的表达式求值并添加到上下文中。变量可以引用其他变量，求值顺序由引用关系决定。
+     * </p>
+     *
+     * @param vars 变量映射
+     * @return 上下文对象
+     */
+    public Map<String, Object> createContext(Map<String, String> vars) {
+        if (vars == null || vars.isEmpty()) {
+            return new HashMap<>();
+        }
+
+        try (VariableFrame frame = VariableFrame.acquire()) {
+            createContext(vars, frame);
+            return frame.toMap();
+        }
+    }
+
+    /**
+     * 在变量帧中创建表达式上下文。
+     * <p>
+     * 变量以延迟求值的形式写入变量帧，首次读取时才按引用关系求值，结果在帧内复用，
+     * 没有被条件或动作读取的变量不会求值。相互循环引用的变量按声明顺序立即求值。
+     * </p>
+     * <p>
+     * 引用关系按变量映射的内容缓存，内容相同的映射共享同一分析结果。
+     * </p>
+     *
+     * @param vars  变量映射
+     * @param frame 目标变量帧
+     */
+    public void createContext(Map<String, String> vars, VariableFrame frame) {
+        if (vars == null || vars.isEmpty()) {
+            return;
+        }
+        if (isInitialized()) {
+            VariablePlan.of(this, vars).bind(frame);
+            return;
+        }
+
+        for (Map.Entry<String, String> var : vars.entrySet()) {
+            CompiledExpression compiled;
+            try {
+                compiled = compileIfReady(var.getValue(), false);
+            } catch (Exception e) {
+                OElib.LOGGER.debug("Failed to evaluate variable {}: {}", var.getKey(), e.getMessage());
+                frame.set(var.getKey(), var.getValue()); // 使用原始字符串作为后备
+                continue;
+            }
+            frame.set(var.getKey(), resolveVariable(var.getKey(), var.getValue(), compiled, frame));
+        }
+    }
+
+    /**
+     * 求值单个变量，失败时使用原始字符串。
+     *
+     * @param name     变量名
+     * @param raw      变量的原始值
+     * @param compiled 已编译句柄，引擎未初始化时为 null
+     * @param frame    变量帧
+     * @return 变量值
+     */
+    static Object resolveVariable(String name, String raw, CompiledExpression compiled, VariableFrame frame) {
+        try {
+            return compiled != null ? compiled.resolve(raw, frame) : null;
+        } catch (Exception e) {
+            OElib.LOGGER.debug("Failed to evaluate variable {}: {}", name, e.getMessage());
+            return raw; // 使用原始字符串作为后备
+        }
+    }
+
+    /**
+     * 检查条件是否满足。
+     * <p>
+     * 支持通配符匹配（*）和表达式求值。通配符以外的字符均按字面匹配。
+     * 条件表达式中赋值的变量会写回上下文对象。
+     * </p>
+     *
+     * @param conditions 条件映射
+     * @param context    上下文对象
+     * @return 是否所有条件都满足
+     */
+    public boolean checkConditions(Map<String, String> conditions, Map<String, Object> context) {
+        if (conditions == null || conditions.isEmpty()) {
+            return true;
+        }
+
+        try (VariableFrame frame = VariableFrame.acquire()) {
+            frame.setAll(context);
+            try {
+                return checkConditions(conditions, frame);
+            } finally {
+                frame.writeAssignmentsTo(context);
+            }
+        }
+    }
+
+    /**
+     * 在变量帧上检查条件是否满足。
+     *
+     * @param conditions 条件映射
+     * @param frame      变量帧
+     * @return 是否所有条件都满足
+     */
+    public boolean checkConditions(Map<String, String> conditions, VariableFrame frame) {
+        if (conditions == null || conditions.isEmpty()) {
+            return true;
+        }
+
+        for (Map.Entry<String, String> condition : conditions.entrySet()) {
+            String expression = condition.getValue();
+            Object expectedValue;
+            CompiledExpression compiled = null;
+
+            try {
+                compiled = compileIfReady(expression, false);
+                expectedValue = resolveCondition(expression, compiled, frame);
+            } catch (Exception e) {
+                expectedValue = expression;
+            }
+
+            if (!matchesCondition(expectedValue, frame.get(condition.getKey()), compiled)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 求值条件的期望值，失败时使用原始字符串。
+     *
+     * @param expression 条件的原始值
+     * @param compiled   已编译句柄，引擎未初始化时为 null
+     * @param frame      变量帧
+     * @return 期望值
+     */
+    static Object resolveCondition(String expression, CompiledExpression compiled, VariableFrame frame) {
+        try {
+            return compiled != null ? compiled.resolve(expression, frame) : null;
+        } catch (Exception e) {
+            return expression;
+        }
+    }
+
+    /**
+     * 比较条件的期望值和实际值。
+     * <p>
+     * 期望值为包含通配符（*）的字符串时按通配符匹配，否则按值比较。
+     * </p>
+     *
+     * @param expectedValue 期望值
+     * @param actualValue   上下文中的实际值
+     * @param compiled      条件的已编译句柄，用于缓存通配符匹配器，可以为 null
+     * @return 条件是否满足
+     */
+    static boolean matchesCondition(Object expectedValue, Object actualValue, CompiledExpression compiled) {
+        // 支持通配符匹配
+        if (expectedValue instanceof String expectedStr && GlobMatcher.isGlob(expectedStr)) {
+            GlobMatcher matcher = compiled != null ? compiled.glob(expectedStr) : GlobMatcher.of(expectedStr);
+            return actualValue != null && matcher.matches(actualValue.toString());
+        }
+        return Objects.equals(expectedValue, actualValue);
+    }
+
+    /**
+     * 执行动作列表。
+     * <p>
+     * 依次执行动作列表中的每个表达式。需要限制每 tick 执行时间的动作应通过 {@link ActionScheduler#submit} 提交。
+     * </p>
+     *
+     * @param actions 动作列表
+     * @param context 上下文对象
+     */
+    public void executeActions(List<String> actions, Map<String, Object> context) {
+        if (actions == null) return;
+
+        for (String action : actions) {
+            executeAction(action, context);
+        }
+    }
+
+    /**
+     * 执行单个动作，失败时记录错误日志。
+     *
+     * @param action  动作表达式
+     * @param context 上下文对象
+     * @return 是否执行成功
+     */
+    boolean executeAction(String action, Map<String, Object> context) {
+        try {
+            evaluate(action, context);
+            return true;
+        } catch (Exception e) {
+            OElib.LOGGER.error("Failed to execute action: {}", action, e);
+            return false;
+        }
+    }
+
+    /**
+     * 检查模组加载条件。
+     * <p>
+     * 检查变量映射中是否包含 modLoaded 条件，并验证其结果。
+     * </p>
+     *
+     * @param vars 变量映射
+     * @return 是否应该加载（true表示应该加载，false表示不应该加载）
+     */
+    public boolean checkModLoadedCondition(Map<String, String> vars) {
+        if (vars == null || !vars.containsKey("modLoaded")) {
+            return true; // 没有条件则默认加载
+        }
+
+        try (VariableFrame frame = VariableFrame.acquire()) {
+            Object result = evaluate(vars.get("modLoaded"), frame, false);
+            return !Boolean.FALSE.equals(result);
+        } catch (Exception e) {
+            OElib.LOGGER.debug("Failed to evaluate modLoaded condition: {}", e.getMessage());
+            return true; // 出错时默认加载
+        }
+    }
+    private void scanClassSmart(EngineSnapshot.Builder builder, Class<?> clazz, String modid,
+                                Set<String> requiredFunctions) {
+        scanClassInternal(builder, clazz, modid, requiredFunctions, true);
+    }
+
+    private void scanClass(EngineSnapshot.Builder builder, Class<?> clazz, String modid) {
+        scanClassInternal(builder, clazz, modid, null, false);
+    }
+
+    private void scanClassInternal(EngineSnapshot.Builder builder, Class<?> clazz, String modid,
+                                   Set<String> requiredFunctions, boolean smart) {
+        for (Method method : clazz.getDeclaredMethods()) {
+            ExpressionFunction ann = method.getAnnotation(ExpressionFunction.class);
+            if (ann == null) continue;
+
+            // 验证方法必须是静态的
+            if (!Modifier.isStatic(method.getModifiers())) {
+                OElib.LOGGER.warn("Expression function must be static: {}.{}", clazz.getSimpleName(), method.getName());
+                continue;
+            }
+
+            // 获取函数名
+            String name = ann.value().isEmpty() ? method.getName() : ann.value();
+
+            // 智能注册模式：检查是否需要该函数
+            if (smart && (requiredFunctions == null || !requiredFunctions.contains(name))) {
+                OElib.LOGGER.debug("Skipping unused function: {} ({})", name, clazz.getSimpleName());
+                continue;
+            }
+
+            // 冲突检查，只在同一命名空间内检查
+            Method conflict = builder.get(name);
+            if (conflict != null) {
+                OElib.LOGGER.warn("Function name conflict in '{}': {} conflicts with {}.{}",
+                        namespace, name, conflict.getDeclaringClass().getSimpleName(), conflict.getName());
+                continue;
+            }
+
+            if (!builder.add(name, method)) {
+                OElib.LOGGER.debug("Function {} ({}) could not be bound directly, falling back to reflective calls",
+                        name, clazz.getSimpleName());
+            }
+            OElib.LOGGER.debug("Registered expression function{}: {} ({}, {})",
+                    smart ? " (smart)" : "", name, clazz.getSimpleName(), modid);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ExpressionNamespace[" + namespace + "]";
+    }
+}
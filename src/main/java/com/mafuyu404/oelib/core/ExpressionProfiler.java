@@ -0,0 +1,298 @@
+package com.mafuyu404.oelib.core;
+
+import com.mafuyu404.oelib.util.ExpressionTokenizer;
+import net.minecraft.resources.ResourceLocation;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 表达式性能分析器。
+ * <p>
+ * 按表达式统计调用次数、异常次数和耗时，并将表达式归属到声明它的数据条目和数据类型。
+ * 耗时以 2 的幂为桶记录在直方图中，百分位数按桶上界估算。
+ * </p>
+ * <p>
+ * 默认关闭，关闭时每次执行只多一次 volatile 读取。采样模式下调用次数和异常次数仍精确统计，
+ * 耗时只对约 1/{@link #getSampleInterval()} 的调用计时，总耗时按比例估算，可以在生产环境中长期开启。
+ * </p>
+ */
+public final class ExpressionProfiler {
+
+    private static final int BUCKETS = 64;
+
+    private static final Map<String, Stats> stats = new ConcurrentHashMap<>();
+    private static final Map<String, Set<Origin>> origins = new ConcurrentHashMap<>();
+    private static volatile Mode mode = Mode.OFF;
+    private static volatile boolean active = false;
+    private static volatile int sampleInterval = 64;
+    private static volatile int epoch = 0;
+
+    private ExpressionProfiler() {
+    }
+
+    /**
+     * 设置分析模式。
+     *
+     * @param newMode 分析模式
+     */
+    public static void setMode(Mode newMode) {
+        mode = Objects.requireNonNull(newMode, "Profiler mode cannot be null");
+        active = newMode != Mode.OFF;
+    }
+
+    /**
+     * 获取当前分析模式。
+     *
+     * @return 分析模式
+     */
+    public static Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * 设置采样模式下的采样间隔。
+     *
+     * @param interval 平均每多少次调用计时一次，必须为正数
+     */
+    public static void setSampleInterval(int interval) {
+        if (interval <= 0) {
+            throw new IllegalArgumentException("Sample interval must be positive: " + interval);
+        }
+        sampleInterval = interval;
+    }
+
+    /**
+     * 获取采样模式下的采样间隔。
+     *
+     * @return 采样间隔
+     */
+    public static int getSampleInterval() {
+        return sampleInterval;
+    }
+
+    /**
+     * 清空已收集的统计数据，表达式归属保留。
+     */
+    public static void reset() {
+        epoch++;
+        stats.clear();
+    }
+
+    /**
+     * 记录表达式所属的数据条目。
+     *
+     * @param expression 表达式字符串
+     * @param location   数据条目位置
+     * @param dataClass  数据类型
+     */
+    public static void attribute(String expression, ResourceLocation location, Class<?> dataClass) {
+        origins.computeIfAbsent(ExpressionTokenizer.normalize(expression), k -> ConcurrentHashMap.newKeySet())
+                .add(new Origin(location, dataClass));
+    }
+
+    /**
+     * 清空表达式归属，在重新收集数据包表达式前调用。
+     */
+    public static void clearAttributions() {
+        origins.clear();
+    }
+
+    /**
+     * 获取所有表达式的统计报告，按总耗时从高到低排序。
+     *
+     * @return 统计报告列表
+     */
+    public static List<Report> getReports() {
+        List<Report> reports = new ArrayList<>(stats.size());
+        for (Stats value : stats.values()) {
+            reports.add(value.report());
+        }
+        reports.sort(Comparator.comparingLong(Report::totalNanos).reversed());
+        return reports;
+    }
+
+    /**
+     * 获取总耗时最高的若干表达式。
+     *
+     * @param limit 最大数量
+     * @return 统计报告列表
+     */
+    public static List<Report> getSlowest(int limit) {
+        List<Report> reports = getReports();
+        return reports.size() > limit ? new ArrayList<>(reports.subList(0, limit)) : reports;
+    }
+
+    /**
+     * 检查分析器是否开启。
+     */
+    static boolean isActive() {
+        return active;
+    }
+
+    /**
+     * 获取表达式的统计对象，句柄缓存返回值并在统计被重置后重新获取。
+     *
+     * @param source 规范化后的表达式
+     * @param cached 句柄上缓存的统计对象，可以为 null
+     * @return 统计对象
+     */
+    static Stats stats(String source, Stats cached) {
+        if (cached != null && cached.epoch == epoch) {
+            return cached;
+        }
+        return stats.computeIfAbsent(source, k -> new Stats(k, epoch));
+    }
+
+    /**
+     * 开始一次调用。
+     *
+     * @return 计时起点，本次调用不计时时返回 -1
+     */
+    static long begin(Stats target) {
+        target.invocations.increment();
+        Mode current = mode;
+        if (current == Mode.FULL
+                || (current == Mode.SAMPLED && ThreadLocalRandom.current().nextInt(sampleInterval) == 0)) {
+            return System.nanoTime();
+        }
+        return -1;
+    }
+
+    /**
+     * 结束一次调用。
+     *
+     * @param start  {@link #begin} 返回的计时起点
+     * @param failed 是否抛出了异常
+     */
+    static void end(Stats target, long start, boolean failed) {
+        if (failed) {
+            target.exceptions.increment();
+        }
+        if (start >= 0) {
+            target.record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * 分析模式。
+     */
+    public enum Mode {
+        /**
+         * 关闭。
+         */
+        OFF,
+        /**
+         * 统计所有调用次数，按采样间隔随机计时。
+         */
+        SAMPLED,
+        /**
+         * 为每次调用计时。
+         */
+        FULL
+    }
+
+    /**
+     * 表达式的来源。
+     *
+     * @param location  数据条目位置
+     * @param dataClass 数据类型
+     */
+    public record Origin(ResourceLocation location, Class<?> dataClass) {
+        @Override
+        public String toString() {
+            return location + " (" + dataClass.getSimpleName() + ")";
+        }
+    }
+
+    /**
+     * 单个表达式的统计报告。
+     *
+     * @param expression  表达式
+     * @param invocations 调用次数
+     * @param exceptions  异常次数
+     * @param samples     计时的调用次数
+     * @param totalNanos  总耗时（纳秒），采样模式下为估算值
+     * @param p50Nanos    耗时中位数（纳秒）
+     * @param p99Nanos    耗时 99 百分位数（纳秒）
+     * @param maxNanos    最大耗时（纳秒）
+     * @param origins     表达式所属的数据条目
+     */
+    public record Report(String expression, long invocations, long exceptions, long samples, long totalNanos,
+                         long p50Nanos, long p99Nanos, long maxNanos, Set<Origin> origins) {
+
+        /**
+         * 获取平均耗时。
+         *
+         * @return 平均耗时（纳秒），没有调用时为 0
+         */
+        public double meanNanos() {
+            return invocations == 0 ? 0 : (double) totalNanos / invocations;
+        }
+    }
+
+    /**
+     * 单个表达式的统计数据。
+     */
+    static final class Stats {
+        private final String expression;
+        private final int epoch;
+        private final LongAdder invocations = new LongAdder();
+        private final LongAdder exceptions = new LongAdder();
+        private final LongAdder samples = new LongAdder();
+        private final LongAdder sampledNanos = new LongAdder();
+        private final AtomicLong maxNanos = new AtomicLong();
+        private final AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+
+        private Stats(String expression, int epoch) {
+            this.expression = expression;
+            this.epoch = epoch;
+        }
+
+        private void record(long nanos) {
+            samples.increment();
+            sampledNanos.add(nanos);
+            maxNanos.accumulateAndGet(nanos, Math::max);
+            histogram.incrementAndGet(BUCKETS - 1 - Long.numberOfLeadingZeros(nanos | 1));
+        }
+
+        private Report report() {
+            long calls = invocations.sum();
+            long sampled = samples.sum();
+            long total = sampledNanos.sum();
+            if (sampled > 0 && sampled < calls) {
+                total = (long) ((double) total * calls / sampled);
+            }
+            long[] counts = new long[BUCKETS];
+            long counted = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] = histogram.get(i);
+                counted += counts[i];
+            }
+            long max = maxNanos.get();
+            return new Report(expression, calls, exceptions.sum(), sampled, total,
+                    Math.min(percentile(counts, counted, 0.50), max), Math.min(percentile(counts, counted, 0.99), max), max,
+                    Set.copyOf(origins.getOrDefault(expression, Set.of())));
+        }
+
+        private static long percentile(long[] counts, long total, double fraction) {
+            if (total == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(total * fraction);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    // 返回桶的上界
+                    return i >= BUCKETS - 2 ? Long.MAX_VALUE : (1L << (i + 1)) - 1;
+                }
+            }
+            return Long.MAX_VALUE;
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package com.mafuyu404.oelib.core;
+
+import org.mvel2.DataConversion;
+import org.mvel2.MVEL;
+import org.mvel2.ParserContext;
+import org.mvel2.ast.FunctionInstance;
+import org.mvel2.integration.VariableResolver;
+import org.mvel2.integration.VariableResolverFactory;
+import org.mvel2.integration.impl.SimpleValueResolver;
+
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.StringJoiner;
+
+/**
+ * 绑定到表达式引擎的函数。
+ * <p>
+ * MVEL 对以 {@link Method} 导入的函数使用 {@link Method#invoke} 反射调用。
+ * 这里改为在注册时通过 {@link LambdaMetafactory} 生成直接调用目标方法的适配器，
+ * 并以 {@link FunctionInstance} 的形式交给 MVEL，反射访问器和 ASM 访问器都会直接调用 {@link #call}。
+ * </p>
+ * <p>
+ * 参数按目标方法的参数类型预先确定转换规则：类型已匹配时直接传递，
+ * 否则使用 MVEL 的 {@link DataConversion} 转换，与反射调用时的行为一致。
+ * </p>
+ */
+final class FunctionBinding extends FunctionInstance {
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    private final String name;
+    private final Method method;
+    private final Class<?>[] argumentTypes;
+    private final Object invoker;
+    private final VariableResolver resolver;
+
+    private FunctionBinding(org.mvel2.ast.Function function, String name, Method method, Object invoker) {
+        super(function);
+        this.name = name;
+        this.method = method;
+        this.invoker = invoker;
+        this.resolver = new SimpleValueResolver(this);
+
+        Class<?>[] parameterTypes = method.getParameterTypes();
+        this.argumentTypes = new Class<?>[parameterTypes.length];
+        for (int i = 0; i < parameterTypes.length; i++) {
+            argumentTypes[i] = MethodType.methodType(parameterTypes[i]).wrap().returnType();
+        }
+    }
+
+    /**
+     * 为函数创建绑定。
+     *
+     * @param name   函数在表达式中的名称
+     * @param method 静态方法
+     * @return 函数绑定，方法无法绑定（可变参数或不可访问）时返回 null
+     */
+    static FunctionBinding bind(String name, Method method) {
+        if (method.isVarArgs()) {
+            // MVEL 只会为 Method 导入展开可变参数
+            return null;
+        }
+        try {
+            MethodHandle target = LOOKUP.unreflect(method);
+            return new FunctionBinding(declare(name, method.getParameterCount()), name, method, adapt(target));
+        } catch (Throwable e) {
+            return null;
+        }
+    }
+
+    /**
+     * 声明与目标方法参数个数相同的 MVEL 函数，用于满足 MVEL 对函数名和参数个数的检查。
+     */
+    private static org.mvel2.ast.Function declare(String name, int parameterCount) {
+        StringJoiner parameters = new StringJoiner(", ");
+        for (int i = 0; i < parameterCount; i++) {
+            parameters.add("p" + i);
+        }
+        ParserContext context = new ParserContext();
+        MVEL.compileExpression("def " + name + "(" + parameters + ") { null }", context);
+        return context.getFunction(name);
+    }
+
+    /**
+     * 为常见参数个数生成函数式接口适配器，参数更多或没有返回值时使用展开参数数组的方法句柄。
+     * 基本类型参数和返回值的拆箱、装箱由生成的适配器完成。
+     */
+    private static Object adapt(MethodHandle target) throws Throwable {
+        MethodType type = target.type();
+        Class<?> invokerType = switch (type.parameterCount()) {
+            case 0 -> Invoker0.class;
+            case 1 -> Invoker1.class;
+            case 2 -> Invoker2.class;
+            case 3 -> Invoker3.class;
+            default -> null;
+        };
+        if (invokerType == null || type.returnType() == void.class) {
+            return target.asSpreader(Object[].class, type.parameterCount())
+                    .asType(MethodType.methodType(Object.class, Object[].class));
+        }
+
+        return LambdaMetafactory.metafactory(LOOKUP, "invoke", MethodType.methodType(invokerType),
+                        MethodType.genericMethodType(type.parameterCount()), target, type.wrap())
+                .getTarget()
+                .invoke();
+    }
+
+    /**
+     * 获取返回该函数的变量解析器。
+     *
+     * @return 变量解析器
+     */
+    VariableResolver resolver() {
+        return resolver;
+    }
+
+    @Override
+    public Object call(Object ctx, Object thisValue, VariableResolverFactory factory, Object[] parms) {
+        return invoke(parms);
+    }
+
+    /**
+     * 调用函数。
+     *
+     * @param args 参数
+     * @return 返回值，void 方法返回 null
+     */
+    Object invoke(Object[] args) {
+        int count = argumentTypes.length;
+        if ((args == null ? 0 : args.length) != count) {
+            throw new IllegalArgumentException("Function " + name + " expects " + count + " arguments");
+        }
+        for (int i = 0; i < count; i++) {
+            Object arg = args[i];
+            if (arg != null && !argumentTypes[i].isInstance(arg)) {
+                args[i] = DataConversion.convert(arg, argumentTypes[i]);
+            }
+        }
+
+        try {
+            return switch (count) {
+                case 0 -> invoker instanceof Invoker0 i ? i.invoke() : spread(args);
+                case 1 -> invoker instanceof Invoker1 i ? i.invoke(args[0]) : spread(args);
+                case 2 -> invoker instanceof Invoker2 i ? i.invoke(args[0], args[1]) : spread(args);
+                case 3 -> invoker instanceof Invoker3 i ? i.invoke(args[0], args[1], args[2]) : spread(args);
+                default -> spread(args);
+            };
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new RuntimeException("Failed to invoke function " + name, e);
+        }
+    }
+
+    private Object spread(Object[] args) throws Throwable {
+        return (Object) ((MethodHandle) invoker).invokeExact(args == null ? new Object[0] : args);
+    }
+
+    @Override
+    public String toString() {
+        return "FunctionBinding[" + name + " -> " + method.getDeclaringClass().getSimpleName() + "." + method.getName() + "]";
+    }
+
+    @FunctionalInterface
+    interface Invoker0 {
+        Object invoke();
+    }
+
+    @FunctionalInterface
+    interface Invoker1 {
+        Object invoke(Object a);
+    }
+
+    @FunctionalInterface
+    interface Invoker2 {
+        Object invoke(Object a, Object b);
+    }
+
+    @FunctionalInterface
+    interface Invoker3 {
+        Object invoke(Object a, Object b, Object c);
+    }
+}
@@ -0,0 +1,129 @@
+package com.mafuyu404.oelib.core;
+
+import org.mvel2.ParserConfiguration;
+import org.mvel2.UnresolveablePropertyException;
+import org.mvel2.integration.VariableResolver;
+import org.mvel2.integration.VariableResolverFactory;
+import org.mvel2.integration.impl.BaseVariableResolverFactory;
+import org.mvel2.integration.impl.MapVariableResolverFactory;
+import org.mvel2.integration.impl.SimpleValueResolver;
+
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 表达式引擎使用的解析配置。
+ * <p>
+ * 函数仍以 {@link Method} 导入，编译期的类型推断和参数检查与 MVEL 原有行为一致；
+ * 运行期由 {@link #getVariableFactory} 返回的解析工厂将函数名解析为 {@link FunctionBinding}，
+ * 从而绕过反射调用。该工厂同时取代了 MVEL 每次执行都会创建的导入解析工厂。
+ * </p>
+ * <p>
+ * 配置只在发布到 {@link EngineSnapshot} 之前修改，发布后只读，因此使用普通映射。
+ * </p>
+ */
+final class FunctionConfiguration extends ParserConfiguration {
+
+    private final Map<String, VariableResolver> functions;
+
+    FunctionConfiguration() {
+        this.functions = new HashMap<>();
+    }
+
+    /**
+     * 复制现有配置中的导入和已绑定函数。
+     *
+     * @param source 源配置
+     */
+    FunctionConfiguration(FunctionConfiguration source) {
+        this.functions = new HashMap<>(source.functions);
+        addAllImports(source.getImports());
+    }
+
+    /**
+     * 导入函数。
+     *
+     * @param name   函数名
+     * @param method 静态方法
+     * @return 是否已绑定为非反射调用
+     */
+    boolean addFunction(String name, Method method) {
+        addImport(name, method);
+        FunctionBinding binding = FunctionBinding.bind(name, method);
+        if (binding == null) {
+            return false;
+        }
+        functions.put(name, binding.resolver());
+        return true;
+    }
+
+    @Override
+    public VariableResolverFactory getVariableFactory(VariableResolverFactory factory) {
+        return new FunctionResolverFactory(functions, getImports(), factory);
+    }
+
+    /**
+     * 运行期解析工厂，依次从已绑定函数、其他导入和下一级工厂中解析变量。
+     */
+    private static final class FunctionResolverFactory extends BaseVariableResolverFactory {
+        private final Map<String, VariableResolver> functions;
+        private final Map<String, Object> imports;
+
+        private FunctionResolverFactory(Map<String, VariableResolver> functions, Map<String, Object> imports,
+                                        VariableResolverFactory nextFactory) {
+            this.functions = functions;
+            this.imports = imports;
+            this.nextFactory = nextFactory;
+        }
+
+        @Override
+        public VariableResolver createVariable(String name, Object value) {
+            return next().createVariable(name, value);
+        }
+
+        @Override
+        public VariableResolver createVariable(String name, Object value, Class<?> type) {
+            return next().createVariable(name, value, type);
+        }
+
+        private VariableResolverFactory next() {
+            if (nextFactory == null) {
+                nextFactory = new MapVariableResolverFactory(new HashMap<>());
+            }
+            return nextFactory;
+        }
+
+        @Override
+        public boolean isTarget(String name) {
+            return functions.containsKey(name) || imports.containsKey(name);
+        }
+
+        @Override
+        public boolean isResolveable(String name) {
+            return name != null && (isTarget(name) || isNextResolveable(name));
+        }
+
+        @Override
+        public VariableResolver getVariableResolver(String name) {
+            VariableResolver function = functions.get(name);
+            if (function != null) {
+                return function;
+            }
+            Object imported = imports.get(name);
+            if (imported != null) {
+                return new SimpleValueResolver(imported);
+            }
+            if (nextFactory != null) {
+                return nextFactory.getVariableResolver(name);
+            }
+            throw new UnresolveablePropertyException("unable to resolve variable '" + name + "'");
+        }
+
+        @Override
+        public Set<String> getKnownVariables() {
+            return nextFactory == null ? Set.of() : nextFactory.getKnownVariables();
+        }
+    }
+}
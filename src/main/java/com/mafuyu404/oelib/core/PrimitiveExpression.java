@@ -0,0 +1,549 @@
+package com.mafuyu404.oelib.core;
+
+import com.mafuyu404.oelib.util.ExpressionTokenizer;
+import com.mafuyu404.oelib.util.ExpressionTokenizer.Token;
+import com.mafuyu404.oelib.util.ExpressionTokenizer.TokenType;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 强类型表达式的原始类型求值器。
+ * <p>
+ * 大多数条件只是数值比较和布尔组合，例如 {@code health < 10 && !creative}。
+ * 对于只由声明为 {@code int}、{@code double}、{@code boolean}（或其包装类型）的输入变量、
+ * 整数和小数字面量、算术运算、比较运算、逻辑运算和括号构成的表达式，
+ * 编译为直接返回原始类型的节点树，求值时不经过 MVEL，中间结果和返回值都不装箱。
+ * </p>
+ * <p>
+ * 运算语义与 MVEL 保持一致：除法总是得到 {@code double}，整数加减和取余按 {@code int} 溢出回绕。
+ * MVEL 会将溢出的整数乘法提升为 {@code long}，变量值不是声明的类型，或整数取余的除数为零时，
+ * 求值抛出 {@link Fallback}，调用方改用 MVEL 执行，保证结果完全一致。
+ * 其他语法（函数调用、属性访问、字符串、三元运算等）在编译时即返回 null。
+ * </p>
+ */
+final class PrimitiveExpression {
+
+    private final Node root;
+
+    private PrimitiveExpression(Node root) {
+        this.root = root;
+    }
+
+    /**
+     * 尝试将表达式编译为原始类型求值器。
+     *
+     * @param expression 常量折叠后的表达式
+     * @param signature  类型签名
+     * @return 求值器，表达式超出支持的范围时为 null
+     */
+    static PrimitiveExpression compile(String expression, TypeSignature signature) {
+        Parser parser = new Parser(ExpressionTokenizer.tokenize(expression), signature.inputTypes());
+        Node root = parser.parse();
+        return root != null ? new PrimitiveExpression(root) : null;
+    }
+
+    /**
+     * 结果是否为布尔值。
+     */
+    boolean isBoolean() {
+        return root.type == Type.BOOLEAN;
+    }
+
+    /**
+     * 结果是否为数值。
+     */
+    boolean isNumeric() {
+        return root.type != Type.BOOLEAN;
+    }
+
+    /**
+     * 结果是否为整数。
+     */
+    boolean isInt() {
+        return root.type == Type.INT;
+    }
+
+    boolean evaluateBoolean(VariableFrame frame) {
+        return root.bool(frame);
+    }
+
+    double evaluateDouble(VariableFrame frame) {
+        return root.number(frame);
+    }
+
+    int evaluateInt(VariableFrame frame) {
+        return root.integer(frame);
+    }
+
+    /**
+     * 当前输入无法保证与 MVEL 结果一致，需要改用 MVEL 执行。
+     * <p>
+     * 共享单个实例且不记录栈，抛出时不分配对象。
+     * </p>
+     */
+    static final class Fallback extends RuntimeException {
+        static final Fallback INSTANCE = new Fallback();
+
+        private Fallback() {
+            super(null, null, false, false);
+        }
+    }
+
+    private enum Type {
+        INT,
+        DOUBLE,
+        BOOLEAN
+    }
+
+    private abstract static class Node {
+        final Type type;
+
+        Node(Type type) {
+            this.type = type;
+        }
+
+        boolean bool(VariableFrame frame) {
+            throw new IllegalStateException();
+        }
+
+        int integer(VariableFrame frame) {
+            throw new IllegalStateException();
+        }
+
+        double number(VariableFrame frame) {
+            return integer(frame);
+        }
+    }
+
+    private static final class IntLiteral extends Node {
+        private final int value;
+
+        IntLiteral(int value) {
+            super(Type.INT);
+            this.value = value;
+        }
+
+        @Override
+        int integer(VariableFrame frame) {
+            return value;
+        }
+    }
+
+    private static final class DoubleLiteral extends Node {
+        private final double value;
+
+        DoubleLiteral(double value) {
+            super(Type.DOUBLE);
+            this.value = value;
+        }
+
+        @Override
+        double number(VariableFrame frame) {
+            return value;
+        }
+    }
+
+    private static final class BooleanLiteral extends Node {
+        private final boolean value;
+
+        BooleanLiteral(boolean value) {
+            super(Type.BOOLEAN);
+            this.value = value;
+        }
+
+        @Override
+        boolean bool(VariableFrame frame) {
+            return value;
+        }
+    }
+
+    private static final class Variable extends Node {
+        private final int slot;
+
+        Variable(Type type, String name) {
+            super(type);
+            this.slot = VariableFrame.slot(name);
+        }
+
+        @Override
+        boolean bool(VariableFrame frame) {
+            if (frame.get(slot) instanceof Boolean value) {
+                return value;
+            }
+            throw Fallback.INSTANCE;
+        }
+
+        @Override
+        int integer(VariableFrame frame) {
+            Object value = frame.get(slot);
+            if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+                return ((Number) value).intValue();
+            }
+            throw Fallback.INSTANCE;
+        }
+
+        @Override
+        double number(VariableFrame frame) {
+            if (type == Type.INT) {
+                return integer(frame);
+            }
+            if (frame.get(slot) instanceof Double number) {
+                return number;
+            }
+            throw Fallback.INSTANCE;
+        }
+    }
+
+    private static final class Negate extends Node {
+        private final Node operand;
+
+        Negate(Node operand) {
+            super(operand.type);
+            this.operand = operand;
+        }
+
+        @Override
+        int integer(VariableFrame frame) {
+            return -operand.integer(frame);
+        }
+
+        @Override
+        double number(VariableFrame frame) {
+            return type == Type.INT ? -operand.integer(frame) : -operand.number(frame);
+        }
+    }
+
+    private static final class Not extends Node {
+        private final Node operand;
+
+        Not(Node operand) {
+            super(Type.BOOLEAN);
+            this.operand = operand;
+        }
+
+        @Override
+        boolean bool(VariableFrame frame) {
+            return !operand.bool(frame);
+        }
+    }
+
+    private static final class Arithmetic extends Node {
+        private final char operator;
+        private final Node left;
+        private final Node right;
+
+        Arithmetic(char operator, Node left, Node right) {
+            super(operator != '/' && left.type == Type.INT && right.type == Type.INT ? Type.INT : Type.DOUBLE);
+            this.operator = operator;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        int integer(VariableFrame frame) {
+            int a = left.integer(frame);
+            int b = right.integer(frame);
+            switch (operator) {
+                case '+':
+                    return a + b;
+                case '-':
+                    return a - b;
+                case '*':
+                    long product = (long) a * b;
+                    if ((int) product != product) {
+                        // MVEL 将溢出的乘积提升为 long
+                        throw Fallback.INSTANCE;
+                    }
+                    return (int) product;
+                default:
+                    if (b == 0) {
+                        throw Fallback.INSTANCE;
+                    }
+                    return a % b;
+            }
+        }
+
+        @Override
+        double number(VariableFrame frame) {
+            if (type == Type.INT) {
+                return integer(frame);
+            }
+            double a = left.number(frame);
+            double b = right.number(frame);
+            switch (operator) {
+                case '+':
+                    return a + b;
+                case '-':
+                    return a - b;
+                case '*':
+                    return a * b;
+                case '/':
+                    return a / b;
+                default:
+                    return a % b;
+            }
+        }
+    }
+
+    private static final class Comparison extends Node {
+        private final String operator;
+        private final Node left;
+        private final Node right;
+        private final boolean integral;
+
+        Comparison(String operator, Node left, Node right) {
+            super(Type.BOOLEAN);
+            this.operator = operator;
+            this.left = left;
+            this.right = right;
+            this.integral = left.type == Type.INT && right.type == Type.INT;
+        }
+
+        @Override
+        boolean bool(VariableFrame frame) {
+            if (left.type == Type.BOOLEAN) {
+                boolean equal = left.bool(frame) == right.bool(frame);
+                return operator.equals("==") == equal;
+            }
+            int result = integral
+                    ? Integer.compare(left.integer(frame), right.integer(frame))
+                    : compare(left.number(frame), right.number(frame));
+            switch (operator) {
+                case "==":
+                    return result == 0;
+                case "!=":
+                    return result != 0;
+                case "<":
+                    return result < 0;
+                case "<=":
+                    return result <= 0;
+                case ">":
+                    return result > 0;
+                default:
+                    return result >= 0;
+            }
+        }
+
+        private static int compare(double a, double b) {
+            if (Double.isNaN(a) || Double.isNaN(b)) {
+                throw Fallback.INSTANCE;
+            }
+            return a < b ? -1 : a > b ? 1 : 0;
+        }
+    }
+
+    private static final class Logical extends Node {
+        private final boolean and;
+        private final Node left;
+        private final Node right;
+
+        Logical(boolean and, Node left, Node right) {
+            super(Type.BOOLEAN);
+            this.and = and;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        boolean bool(VariableFrame frame) {
+            return and ? left.bool(frame) && right.bool(frame) : left.bool(frame) || right.bool(frame);
+        }
+    }
+
+    /**
+     * 递归下降解析器，遇到不支持的语法或类型时返回 null。
+     */
+    private static final class Parser {
+        private static final Set<String> LONGER_OPERATORS = Set.of("==", "!=", "<=", ">=", "&&", "||", "<<", ">>",
+                "++", "--", "+=", "-=", "*=", "/=", "%=", "**", "&=", "|=", "^=");
+
+        private final List<Token> tokens;
+        private final Map<String, Class<?>> inputTypes;
+        private int position;
+
+        Parser(List<Token> tokens, Map<String, Class<?>> inputTypes) {
+            this.tokens = tokens;
+            this.inputTypes = inputTypes;
+        }
+
+        Node parse() {
+            Node node = or();
+            return position == tokens.size() ? node : null;
+        }
+
+        private Node or() {
+            Node left = and();
+            while (left != null && accept("||")) {
+                left = logical(false, left, and());
+            }
+            return left;
+        }
+
+        private Node and() {
+            Node left = comparison();
+            while (left != null && accept("&&")) {
+                left = logical(true, left, comparison());
+            }
+            return left;
+        }
+
+        private static Node logical(boolean and, Node left, Node right) {
+            if (right == null || left.type != Type.BOOLEAN || right.type != Type.BOOLEAN) {
+                return null;
+            }
+            return new Logical(and, left, right);
+        }
+
+        private Node comparison() {
+            Node left = additive();
+            if (left == null) {
+                return null;
+            }
+            for (String operator : new String[]{"==", "!=", "<=", ">=", "<", ">"}) {
+                if (accept(operator)) {
+                    Node right = additive();
+                    if (right == null || (left.type == Type.BOOLEAN) != (right.type == Type.BOOLEAN)) {
+                        return null;
+                    }
+                    if (left.type == Type.BOOLEAN && !operator.equals("==") && !operator.equals("!=")) {
+                        return null;
+                    }
+                    return new Comparison(operator, left, right);
+                }
+            }
+            return left;
+        }
+
+        private Node additive() {
+            Node left = multiplicative();
+            while (left != null) {
+                char operator;
+                if (accept("+")) {
+                    operator = '+';
+                } else if (accept("-")) {
+                    operator = '-';
+                } else {
+                    break;
+                }
+                left = arithmetic(operator, left, multiplicative());
+            }
+            return left;
+        }
+
+        private Node multiplicative() {
+            Node left = unary();
+            while (left != null) {
+                char operator;
+                if (accept("*")) {
+                    operator = '*';
+                } else if (accept("/")) {
+                    operator = '/';
+                } else if (accept("%")) {
+                    operator = '%';
+                } else {
+                    break;
+                }
+                left = arithmetic(operator, left, unary());
+            }
+            return left;
+        }
+
+        private static Node arithmetic(char operator, Node left, Node right) {
+            if (right == null || left.type == Type.BOOLEAN || right.type == Type.BOOLEAN) {
+                return null;
+            }
+            return new Arithmetic(operator, left, right);
+        }
+
+        private Node unary() {
+            if (accept("-")) {
+                Node operand = unary();
+                return operand != null && operand.type != Type.BOOLEAN ? new Negate(operand) : null;
+            }
+            if (accept("!")) {
+                Node operand = unary();
+                return operand != null && operand.type == Type.BOOLEAN ? new Not(operand) : null;
+            }
+            return primary();
+        }
+
+        private Node primary() {
+            if (position >= tokens.size()) {
+                return null;
+            }
+            Token token = tokens.get(position++);
+            if (token.is('(')) {
+                Node node = or();
+                return node != null && position < tokens.size() && tokens.get(position++).is(')') ? node : null;
+            }
+            if (token.type() == TokenType.NUMBER) {
+                return number(token.text());
+            }
+            if (token.type() != TokenType.IDENTIFIER) {
+                return null;
+            }
+            String name = token.text();
+            if (name.equals("true") || name.equals("false")) {
+                return new BooleanLiteral(name.equals("true"));
+            }
+            Class<?> type = inputTypes.get(name);
+            if (type == int.class || type == Integer.class) {
+                return new Variable(Type.INT, name);
+            }
+            if (type == double.class || type == Double.class) {
+                return new Variable(Type.DOUBLE, name);
+            }
+            if (type == boolean.class || type == Boolean.class) {
+                return new Variable(Type.BOOLEAN, name);
+            }
+            return null;
+        }
+
+        private static Node number(String text) {
+            int dot = text.indexOf('.');
+            for (int i = 0; i < text.length(); i++) {
+                if (i != dot && !Character.isDigit(text.charAt(i))) {
+                    // 后缀、指数和十六进制字面量交给 MVEL
+                    return null;
+                }
+            }
+            if (dot >= 0) {
+                return dot < text.length() - 1 ? new DoubleLiteral(Double.parseDouble(text)) : null;
+            }
+            try {
+                return new IntLiteral(Integer.parseInt(text));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        /**
+         * 匹配由相邻符号组成的运算符，例如 {@code &&} 由两个紧邻的 {@code &} 组成。
+         */
+        private boolean accept(String operator) {
+            int end = position + operator.length();
+            if (end > tokens.size()) {
+                return false;
+            }
+            for (int i = 0; i < operator.length(); i++) {
+                Token token = tokens.get(position + i);
+                if (token.type() != TokenType.OPERATOR || !token.is(operator.charAt(i))
+                        || (i > 0 && token.start() != tokens.get(position + i - 1).end())) {
+                    return false;
+                }
+            }
+            // 运算符必须完整匹配，例如 "<" 不能匹配 "<=" 或 "<<" 的前半部分
+            if (end < tokens.size()) {
+                Token next = tokens.get(end);
+                if (next.type() == TokenType.OPERATOR && next.start() == tokens.get(end - 1).end()
+                        && LONGER_OPERATORS.contains(operator + next.text())) {
+                    return false;
+                }
+            }
+            position = end;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,376 @@
+package com.mafuyu404.oelib.core;
+
+import com.mafuyu404.oelib.util.GlobMatcher;
+
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * 条件索引，用于在大量数据条目中找出条件满足的条目。
+ * <p>
+ * 构建时为每个条目选择一个可索引的条件作为入口：
+ * </p>
+ * <ul>
+ *     <li>期望值为常量的条件按键和值放入哈希桶；</li>
+ *     <li>期望值为前缀通配符（如 {@code minecraft:*}）的条件按键放入前缀树；</li>
+ *     <li>形如 {@code minecraft:zombie} 的值虽然能编译为表达式，但其引用的变量通常不存在，求值结果为原始字符串，
+ *     因此同样按原始字符串索引；这些变量全部存在时，条目会额外作为候选并完整检查；</li>
+ *     <li>没有可索引条件的条目放入剩余列表，每次都作为候选。</li>
+ * </ul>
+ * <p>
+ * 匹配时只需按上下文中的实际值查找哈希桶和前缀树得到候选条目，再检查候选条目的其余条件，
+ * 结果与在同一引擎实例上对每个条目调用 {@link ExpressionNamespace#checkConditions} 相同，并保持条目的原始顺序。
+ * </p>
+ * <p>
+ * 索引按构建时的函数表分类条件，引擎重新初始化后应重新构建；{@link DataManager} 持有的索引在
+ * {@link DataRegistry#initializeExpressionEngine()} 中自动重建。未重建的索引在首次匹配时按新的函数表重新分类。
+ * </p>
+ *
+ * @param <T> 数据类型
+ */
+public final class RuleIndex<T> {
+
+    private final ExpressionNamespace owner;
+    private final List<T> entries;
+    private final Function<T, Map<String, String>> conditionExtractor;
+    private volatile Index index;
+
+    private RuleIndex(ExpressionNamespace owner, List<T> entries, Function<T, Map<String, String>> conditionExtractor) {
+        this.owner = owner;
+        this.entries = entries;
+        this.conditionExtractor = conditionExtractor;
+    }
+
+    /**
+     * 构建条件在默认实例中求值的条件索引。
+     *
+     * @param entries            数据条目
+     * @param conditionExtractor 获取条目条件映射的函数，可以返回 null 表示没有条件
+     * @param <T>                数据类型
+     * @return 条件索引
+     */
+    public static <T> RuleIndex<T> build(Collection<T> entries, Function<T, Map<String, String>> conditionExtractor) {
+        return build(ExpressionEngine.getDefault(), entries, conditionExtractor);
+    }
+
+    /**
+     * 构建条件在给定引擎实例中求值的条件索引。
+     *
+     * @param namespace          引擎实例
+     * @param entries            数据条目
+     * @param conditionExtractor 获取条目条件映射的函数，可以返回 null 表示没有条件
+     * @param <T>                数据类型
+     * @return 条件索引
+     */
+    public static <T> RuleIndex<T> build(ExpressionNamespace namespace, Collection<T> entries,
+                                         Function<T, Map<String, String>> conditionExtractor) {
+        RuleIndex<T> ruleIndex = new RuleIndex<>(namespace, List.copyOf(entries), conditionExtractor);
+        ruleIndex.index = ruleIndex.new Index();
+        return ruleIndex;
+    }
+
+    /**
+     * 获取条件全部满足的条目。
+     * <p>
+     * 条件表达式中赋值的变量会写回上下文变量。
+     * </p>
+     *
+     * @param context 上下文变量
+     * @return 匹配的条目，按原始顺序排列
+     */
+    public List<T> match(Map<String, Object> context) {
+        try (VariableFrame frame = VariableFrame.acquire()) {
+            frame.setAll(context);
+            try {
+                return match(frame);
+            } finally {
+                frame.writeAssignmentsTo(context);
+            }
+        }
+    }
+
+    /**
+     * 在变量帧上获取条件全部满足的条目。
+     *
+     * @param frame 变量帧
+     * @return 匹配的条目，按原始顺序排列
+     */
+    public List<T> match(VariableFrame frame) {
+        if (!owner.isInitialized()) {
+            // 未初始化时条件无法分类，逐个检查
+            List<T> result = new ArrayList<>();
+            for (T entry : entries) {
+                if (owner.checkConditions(conditionExtractor.apply(entry), frame)) {
+                    result.add(entry);
+                }
+            }
+            return result;
+        }
+
+        Index current = current();
+        int[] candidates = current.candidates(frame);
+        List<T> result = new ArrayList<>();
+        for (int candidate : candidates) {
+            if (current.rules[candidate].test(frame)) {
+                result.add(entries.get(candidate));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 获取条目数量。
+     *
+     * @return 条目数量
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * 获取未能索引、每次匹配都需要检查的条目数量。
+     *
+     * @return 剩余条目数量
+     */
+    public int residualSize() {
+        return current().residual.length;
+    }
+
+    private Index current() {
+        Index current = index;
+        if (current.generation != owner.getGeneration()) {
+            current = new Index();
+            index = current;
+        }
+        return current;
+    }
+
+    /**
+     * 某一代引擎状态下的索引。
+     */
+    private final class Index {
+        private final int generation;
+        private final Rule[] rules;
+        private final Map<Integer, Map<Object, int[]>> buckets = new HashMap<>();
+        private final Map<Integer, PrefixNode> prefixes = new HashMap<>();
+        private final Map<Integer, int[]> guarded = new HashMap<>();
+        private final int[] residual;
+
+        private Index() {
+            this.generation = owner.getGeneration();
+            this.rules = new Rule[entries.size()];
+
+            Map<Integer, Map<Object, List<Integer>>> bucketLists = new HashMap<>();
+            Map<Integer, List<Integer>> guardedLists = new HashMap<>();
+            List<Integer> residualList = new ArrayList<>();
+            for (int i = 0; i < rules.length; i++) {
+                Rule rule = new Rule(owner, conditionExtractor.apply(entries.get(i)));
+                rules[i] = rule;
+
+                Condition anchor = rule.anchor;
+                if (anchor == null) {
+                    residualList.add(i);
+                    continue;
+                }
+                if (anchor.guards.length > 0) {
+                    // 只要有一个变量不存在，期望值就是原始字符串，因此只需按第一个变量分组
+                    guardedLists.computeIfAbsent(anchor.guards[0], k -> new ArrayList<>()).add(i);
+                }
+                if (anchor.prefix != null) {
+                    prefixes.computeIfAbsent(anchor.slot, k -> new PrefixNode()).insert(anchor.prefix, i);
+                } else {
+                    bucketLists.computeIfAbsent(anchor.slot, k -> new HashMap<>())
+                            .computeIfAbsent(anchor.constant, k -> new ArrayList<>())
+                            .add(i);
+                }
+            }
+
+            bucketLists.forEach((slot, values) -> {
+                Map<Object, int[]> bucket = new HashMap<>();
+                values.forEach((value, list) -> bucket.put(value, toArray(list)));
+                buckets.put(slot, bucket);
+            });
+            prefixes.values().forEach(PrefixNode::seal);
+            guardedLists.forEach((slot, list) -> guarded.put(slot, toArray(list)));
+            this.residual = toArray(residualList);
+        }
+
+        private int[] candidates(VariableFrame frame) {
+            BitSet found = new BitSet(rules.length);
+            for (Map.Entry<Integer, Map<Object, int[]>> bucket : buckets.entrySet()) {
+                int[] matched = bucket.getValue().get(frame.get(bucket.getKey()));
+                if (matched != null) {
+                    for (int candidate : matched) {
+                        found.set(candidate);
+                    }
+                }
+            }
+            for (Map.Entry<Integer, PrefixNode> prefix : prefixes.entrySet()) {
+                Object actual = frame.get(prefix.getKey());
+                if (actual != null) {
+                    prefix.getValue().collect(actual.toString(), found);
+                }
+            }
+            for (Map.Entry<Integer, int[]> guard : guarded.entrySet()) {
+                if (frame.contains(guard.getKey())) {
+                    for (int candidate : guard.getValue()) {
+                        found.set(candidate);
+                    }
+                }
+            }
+            for (int candidate : residual) {
+                found.set(candidate);
+            }
+            return found.stream().toArray();
+        }
+    }
+
+    /**
+     * 单个条目的条件。
+     */
+    private static final class Rule {
+        private final Condition anchor;
+        private final Condition[] rest;
+
+        private Rule(ExpressionNamespace owner, Map<String, String> conditions) {
+            List<Condition> compiled = new ArrayList<>();
+            if (conditions != null) {
+                for (Map.Entry<String, String> condition : conditions.entrySet()) {
+                    compiled.add(new Condition(owner, condition.getKey(), condition.getValue()));
+                }
+            }
+
+            // 优先使用等值条件作为入口，其次是前缀条件，期望值可能随上下文变化的条件排在最后
+            Condition chosen = null;
+            for (Condition condition : compiled) {
+                if (condition.indexable && (chosen == null || condition.rank() < chosen.rank())) {
+                    chosen = condition;
+                }
+            }
+            this.anchor = chosen;
+            if (chosen != null && chosen.guards.length == 0) {
+                // 入口条件已由索引保证满足
+                compiled.remove(chosen);
+            }
+            this.rest = compiled.toArray(new Condition[0]);
+        }
+
+        private boolean test(VariableFrame frame) {
+            for (Condition condition : rest) {
+                if (!condition.test(frame)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * 单个条件。
+     */
+    private static final class Condition {
+        private final int slot;
+        private final String raw;
+        private final CompiledExpression handle;
+        private final boolean indexable;
+        private final Object constant;
+        private final String prefix;
+        private final int[] guards;
+
+        private Condition(ExpressionNamespace owner, String key, String raw) {
+            this.slot = VariableFrame.slot(key);
+            this.raw = raw;
+            this.handle = raw != null ? owner.handle(raw) : null;
+
+            Object expected = null;
+            boolean fixed = false;
+            int[] slots = new int[0];
+            if (raw == null) {
+                fixed = true;
+            } else if (owner.isInitialized()) {
+                // 字面量和常量条件的期望值与上下文无关
+                CompiledExpression.Kind kind = handle.getKind();
+                if (kind == CompiledExpression.Kind.LITERAL) {
+                    expected = raw;
+                    fixed = true;
+                } else if (kind == CompiledExpression.Kind.CONSTANT) {
+                    expected = handle.current().constant();
+                    fixed = true;
+                } else {
+                    slots = handle.current().slots();
+                    expected = raw;
+                    fixed = slots.length > 0;
+                }
+            }
+
+            String prefixPattern = null;
+            boolean canIndex = fixed;
+            if (fixed && expected instanceof String pattern && GlobMatcher.isGlob(pattern)) {
+                int star = pattern.indexOf('*');
+                canIndex = star == pattern.length() - 1;
+                prefixPattern = canIndex ? pattern.substring(0, star) : null;
+            }
+            this.indexable = canIndex;
+            this.constant = expected;
+            this.prefix = prefixPattern;
+            this.guards = slots;
+        }
+
+        private int rank() {
+            return (prefix != null ? 2 : 0) + (guards.length > 0 ? 1 : 0);
+        }
+
+        private boolean test(VariableFrame frame) {
+            Object expectedValue = raw != null ? ExpressionNamespace.resolveCondition(raw, handle, frame) : null;
+            return ExpressionNamespace.matchesCondition(expectedValue, frame.get(slot), handle);
+        }
+    }
+
+    /**
+     * 前缀树节点。
+     */
+    private static final class PrefixNode {
+        private final Map<Character, PrefixNode> children = new HashMap<>();
+        private List<Integer> pending = new ArrayList<>();
+        private int[] entries = new int[0];
+
+        private void insert(String prefix, int entry) {
+            PrefixNode node = this;
+            for (int i = 0; i < prefix.length(); i++) {
+                node = node.children.computeIfAbsent(prefix.charAt(i), k -> new PrefixNode());
+            }
+            node.pending.add(entry);
+        }
+
+        private void seal() {
+            entries = toArray(pending);
+            pending = null;
+            children.values().forEach(PrefixNode::seal);
+        }
+
+        /**
+         * 收集前缀是给定字符串前缀的所有条目。
+         */
+        private void collect(String value, BitSet found) {
+            PrefixNode node = this;
+            int i = 0;
+            while (node != null) {
+                for (int entry : node.entries) {
+                    found.set(entry);
+                }
+                if (i == value.length()) {
+                    break;
+                }
+                node = node.children.get(value.charAt(i++));
+            }
+        }
+    }
+
+    private static int[] toArray(List<Integer> list) {
+        int[] array = new int[list.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = list.get(i);
+        }
+        return array;
+    }
+}
@@ -0,0 +1,59 @@
+package com.mafuyu404.oelib.core;
+
+import java.lang.invoke.MethodType;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.TreeMap;
+
+/**
+ * 强类型编译使用的类型签名。
+ *
+ * @param resultType 期望的结果类型
+ * @param inputTypes 声明的输入变量类型，按变量名排序
+ */
+record TypeSignature(Class<?> resultType, Map<String, Class<?>> inputTypes) {
+
+    TypeSignature {
+        inputTypes = new TreeMap<>(inputTypes);
+    }
+
+    /**
+     * 获取用于区分缓存条目的键。
+     *
+     * @return 签名字符串
+     */
+    String key() {
+        StringJoiner joiner = new StringJoiner(",", resultType.getName() + "(", ")");
+        inputTypes.forEach((name, type) -> joiner.add(name + ":" + type.getName()));
+        return joiner.toString();
+    }
+
+    /**
+     * 检查编译期推断出的类型能否作为期望的结果类型返回。
+     * <p>
+     * 期望 {@code double} 时接受任意数值类型，期望 {@code int} 时只接受不超过 {@code int} 范围的整数类型，
+     * 推断结果为 {@link Object} 时留到运行期转换。
+     * </p>
+     *
+     * @param actual 推断出的类型
+     * @return 是否兼容
+     */
+    boolean accepts(Class<?> actual) {
+        if (actual == null || actual == Object.class) {
+            return true;
+        }
+        Class<?> expected = wrap(resultType);
+        Class<?> boxed = wrap(actual);
+        if (expected == Double.class) {
+            return Number.class.isAssignableFrom(boxed);
+        }
+        if (expected == Integer.class) {
+            return boxed == Integer.class || boxed == Short.class || boxed == Byte.class;
+        }
+        return expected.isAssignableFrom(boxed);
+    }
+
+    private static Class<?> wrap(Class<?> type) {
+        return MethodType.methodType(type).wrap().returnType();
+    }
+}
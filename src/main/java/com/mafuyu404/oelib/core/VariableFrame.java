@@ -0,0 +1,470 @@
+package com.mafuyu404.oelib.core;
+
+import org.mvel2.UnresolveablePropertyException;
+import org.mvel2.integration.VariableResolver;
+import org.mvel2.integration.impl.BaseVariableResolverFactory;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 按槽位索引的变量帧。
+ * <p>
+ * 变量名在编译期被映射为全局唯一的槽位索引，帧内部以数组保存变量值，
+ * 并直接作为 MVEL 的变量解析工厂使用，因此求值时不需要创建 {@link HashMap}
+ * 或 {@code MapVariableResolverFactory}。
+ * </p>
+ * <p>
+ * 只有编译期出现的变量名才会分配槽位。只在运行时出现的变量名，例如没有被任何表达式读取的上下文键、
+ * 表达式中新赋值的变量，保存在帧自己的映射中，随帧清空，不会使全局槽位表持续增长。
+ * </p>
+ * <p>
+ * 帧按线程池化，通过 {@link #acquire()} 获取，使用完毕后必须在同一线程调用 {@link #close()} 归还，
+ * 建议配合 try-with-resources 使用：
+ * </p>
+ * <pre>{@code
+ * try (VariableFrame frame = VariableFrame.acquire()) {
+ *     frame.set("x", 5);
+ *     Object result = compiled.execute(frame);
+ * }
+ * }</pre>
+ */
+public final class VariableFrame extends BaseVariableResolverFactory implements AutoCloseable {
+
+    private static final Map<String, Integer> slots = new ConcurrentHashMap<>();
+    private static volatile String[] slotNames = new String[0];
+    private static final ThreadLocal<Pool> pool = ThreadLocal.withInitial(Pool::new);
+
+    private final Pool owner;
+    private Object[] values = new Object[16];
+    private SlotResolver[] resolvers = new SlotResolver[16];
+    private boolean[] bound = new boolean[16];
+    private int[] touched = new int[16];
+    private int touchedCount;
+    // 没有槽位的变量和表达式赋值过的变量名，只在用到时创建
+    private Map<String, Object> named;
+    private Set<String> assigned;
+
+    private VariableFrame(Pool owner) {
+        this.owner = owner;
+    }
+
+    /**
+     * 获取变量名对应的槽位索引，不存在时分配新槽位。
+     * <p>
+     * 槽位在整个运行期间保持稳定，调用方可以缓存返回值并使用 {@link #set(int, Object)}。
+     * </p>
+     *
+     * @param name 变量名
+     * @return 槽位索引
+     */
+    public static int slot(String name) {
+        Integer slot = slots.get(name);
+        return slot != null ? slot : registerSlot(name);
+    }
+
+    private static synchronized int registerSlot(String name) {
+        Integer slot = slots.get(name);
+        if (slot != null) {
+            return slot;
+        }
+        int index = slotNames.length;
+        String[] names = Arrays.copyOf(slotNames, index + 1);
+        names[index] = name;
+        slotNames = names;
+        slots.put(name, index);
+        return index;
+    }
+
+    /**
+     * 从当前线程的帧池中获取一个空帧。
+     *
+     * @return 变量帧
+     */
+    public static VariableFrame acquire() {
+        return pool.get().acquire();
+    }
+
+    /**
+     * 设置变量值。
+     * <p>
+     * 变量名没有槽位时保存在帧内的映射中，不分配新槽位。
+     * </p>
+     *
+     * @param name  变量名
+     * @param value 变量值
+     * @return 当前帧
+     */
+    public VariableFrame set(String name, Object value) {
+        Integer slot = slots.get(name);
+        if (slot != null) {
+            return set(slot, value);
+        }
+        if (named == null) {
+            named = new HashMap<>();
+        }
+        named.put(name, value);
+        return this;
+    }
+
+    /**
+     * 按槽位设置变量值。
+     *
+     * @param slot  槽位索引
+     * @param value 变量值
+     * @return 当前帧
+     */
+    public VariableFrame set(int slot, Object value) {
+        ensureCapacity(slot);
+        if (!bound[slot]) {
+            bound[slot] = true;
+            if (touchedCount == touched.length) {
+                touched = Arrays.copyOf(touched, touchedCount * 2);
+            }
+            touched[touchedCount++] = slot;
+        }
+        values[slot] = value;
+        return this;
+    }
+
+    /**
+     * 设置延迟求值的变量，首次读取时计算并记住结果。
+     *
+     * @param slot  槽位索引
+     * @param value 延迟求值的变量
+     * @return 当前帧
+     */
+    VariableFrame defer(int slot, Deferred value) {
+        return set(slot, value);
+    }
+
+    /**
+     * 将映射中的所有变量写入帧。
+     *
+     * @param variables 变量映射
+     * @return 当前帧
+     */
+    public VariableFrame setAll(Map<String, ?> variables) {
+        if (variables != null) {
+            for (Map.Entry<String, ?> entry : variables.entrySet()) {
+                set(entry.getKey(), entry.getValue());
+            }
+        }
+        return this;
+    }
+
+    /**
+     * 获取变量值。
+     *
+     * @param name 变量名
+     * @return 变量值，未设置时为 null
+     */
+    public Object get(String name) {
+        Integer slot = slots.get(name);
+        if (slot != null) {
+            return get(slot);
+        }
+        return named != null ? named.get(name) : null;
+    }
+
+    /**
+     * 按槽位获取变量值。
+     *
+     * @param slot 槽位索引
+     * @return 变量值，未设置时为 null
+     */
+    public Object get(int slot) {
+        if (isBound(slot)) {
+            return value(slot);
+        }
+        // 变量可能在槽位分配之前按名称写入
+        return named != null ? named.get(slotNames[slot]) : null;
+    }
+
+    /**
+     * 检查变量是否已设置。
+     *
+     * @param name 变量名
+     * @return 是否已设置
+     */
+    public boolean contains(String name) {
+        Integer slot = slots.get(name);
+        if (slot != null && isBound(slot)) {
+            return true;
+        }
+        return named != null && named.containsKey(name);
+    }
+
+    /**
+     * 按槽位检查变量是否已设置。
+     *
+     * @param slot 槽位索引
+     * @return 是否已设置
+     */
+    public boolean contains(int slot) {
+        return isBound(slot) || (named != null && named.containsKey(slotNames[slot]));
+    }
+
+    /**
+     * 将帧中所有已设置的变量复制到新的映射中。
+     *
+     * @return 变量映射
+     */
+    public Map<String, Object> toMap() {
+        Map<String, Object> map = new HashMap<>();
+        for (int i = 0; i < touchedCount; i++) {
+            int slot = touched[i];
+            Object value = value(slot);
+            // 计算延迟求值的变量时可能为新赋值的变量注册槽位，名称表在计算之后读取
+            map.put(slotNames[slot], value);
+        }
+        if (named != null) {
+            // 槽位中的值是后写入的，优先保留
+            named.forEach(map::putIfAbsent);
+        }
+        return map;
+    }
+
+    /**
+     * 将求值期间表达式赋值的变量写回上下文映射。
+     * <p>
+     * 以映射为上下文的求值先把变量复制到帧中，表达式中的赋值只写入帧；
+     * 调用此方法后赋值与直接在映射上求值时一样对调用方可见。映射不可修改时忽略。
+     * </p>
+     *
+     * @param context 上下文映射，可以为 null
+     */
+    void writeAssignmentsTo(Map<String, Object> context) {
+        if (assigned == null || context == null) {
+            return;
+        }
+        try {
+            for (String name : assigned) {
+                context.put(name, get(name));
+            }
+        } catch (UnsupportedOperationException ignored) {
+            // 不可修改的上下文
+        }
+    }
+
+    /**
+     * 清空帧中的变量并归还到线程帧池。
+     */
+    @Override
+    public void close() {
+        reset();
+        owner.release(this);
+    }
+
+    /**
+     * 清空帧中的变量，帧仍由调用方持有，用于批量求值时在多个上下文之间复用同一帧。
+     */
+    void reset() {
+        for (int i = 0; i < touchedCount; i++) {
+            int slot = touched[i];
+            bound[slot] = false;
+            values[slot] = null;
+        }
+        touchedCount = 0;
+        named = null;
+        assigned = null;
+        nextFactory = null;
+    }
+
+    private Object value(int slot) {
+        Object value = values[slot];
+        if (value instanceof Deferred deferred) {
+            // 计算期间重入读取得到 null，而不是无限递归
+            values[slot] = null;
+            value = deferred.compute(this);
+            values[slot] = value;
+        }
+        return value;
+    }
+
+    private boolean isBound(int slot) {
+        return slot < bound.length && bound[slot];
+    }
+
+    private void ensureCapacity(int slot) {
+        if (slot >= values.length) {
+            int size = Math.max(slot + 1, values.length * 2);
+            values = Arrays.copyOf(values, size);
+            resolvers = Arrays.copyOf(resolvers, size);
+            bound = Arrays.copyOf(bound, size);
+        }
+    }
+
+    private SlotResolver resolver(int slot) {
+        SlotResolver resolver = resolvers[slot];
+        if (resolver == null) {
+            resolver = new SlotResolver(slot);
+            resolvers[slot] = resolver;
+        }
+        return resolver;
+    }
+
+    private void markAssigned(String name) {
+        if (assigned == null) {
+            assigned = new LinkedHashSet<>();
+        }
+        assigned.add(name);
+    }
+
+    @Override
+    public VariableResolver createVariable(String name, Object value) {
+        markAssigned(name);
+        Integer slot = slots.get(name);
+        if (slot != null) {
+            set(slot, value);
+            return resolver(slot);
+        }
+        set(name, value);
+        return new NamedResolver(name);
+    }
+
+    @Override
+    public VariableResolver createVariable(String name, Object value, Class<?> type) {
+        return createVariable(name, value);
+    }
+
+    @Override
+    public VariableResolver getVariableResolver(String name) {
+        Integer slot = slots.get(name);
+        if (slot != null && isBound(slot)) {
+            return resolver(slot);
+        }
+        if (named != null && named.containsKey(name)) {
+            return new NamedResolver(name);
+        }
+        if (nextFactory != null) {
+            return nextFactory.getVariableResolver(name);
+        }
+        throw new UnresolveablePropertyException("unable to resolve variable '" + name + "'");
+    }
+
+    @Override
+    public boolean isTarget(String name) {
+        return contains(name);
+    }
+
+    @Override
+    public boolean isResolveable(String name) {
+        return contains(name) || (nextFactory != null && nextFactory.isResolveable(name));
+    }
+
+    @Override
+    public Set<String> getKnownVariables() {
+        return toMap().keySet();
+    }
+
+    private final class SlotResolver implements VariableResolver {
+        private final int slot;
+
+        private SlotResolver(int slot) {
+            this.slot = slot;
+        }
+
+        @Override
+        public String getName() {
+            return slotNames[slot];
+        }
+
+        @Override
+        public Class getType() {
+            return Object.class;
+        }
+
+        @Override
+        public void setStaticType(Class type) {
+        }
+
+        @Override
+        public int getFlags() {
+            return 0;
+        }
+
+        @Override
+        public Object getValue() {
+            return value(slot);
+        }
+
+        @Override
+        public void setValue(Object value) {
+            markAssigned(slotNames[slot]);
+            values[slot] = value;
+        }
+    }
+
+    /**
+     * 没有槽位的变量的解析器。
+     */
+    private final class NamedResolver implements VariableResolver {
+        private final String name;
+
+        private NamedResolver(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public Class getType() {
+            return Object.class;
+        }
+
+        @Override
+        public void setStaticType(Class type) {
+        }
+
+        @Override
+        public int getFlags() {
+            return 0;
+        }
+
+        @Override
+        public Object getValue() {
+            return get(name);
+        }
+
+        @Override
+        public void setValue(Object value) {
+            markAssigned(name);
+            set(name, value);
+        }
+    }
+
+    /**
+     * 延迟求值的变量。
+     */
+    interface Deferred {
+        /**
+         * 计算变量值。
+         *
+         * @param frame 变量所在的帧
+         * @return 变量值
+         */
+        Object compute(VariableFrame frame);
+    }
+
+    /**
+     * 每个线程独立的帧池，支持嵌套求值时同时持有多个帧。
+     */
+    private static final class Pool {
+        private final List<VariableFrame> free = new ArrayList<>();
+
+        private VariableFrame acquire() {
+            int size = free.size();
+            return size > 0 ? free.remove(size - 1) : new VariableFrame(this);
+        }
+
+        private void release(VariableFrame frame) {
+            if (free.size() < 8) {
+                free.add(frame);
+            }
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package com.mafuyu404.oelib.core;
+
+import com.mafuyu404.oelib.OElib;
+
+import java.util.*;
+
+/**
+ * 变量映射的求值计划。
+ * <p>
+ * 编译时分析变量之间的引用关系：不在循环引用中的变量以 {@link VariableFrame.Deferred} 写入变量帧，
+ * 首次读取时才求值，并在帧内记住结果，因此变量总是在其依赖之后求值，与声明顺序无关，
+ * 没有被读取的变量不会求值。
+ * </p>
+ * <p>
+ * 循环引用中的变量无法确定求值顺序，按声明顺序立即求值，与此前逐项求值的行为一致：
+ * 引用尚未求值的变量时按原始字符串处理。
+ * </p>
+ */
+final class VariablePlan {
+
+    private static final int CACHE_SIZE = 1024;
+    // 按变量映射内容的哈希直接映射的缓存，冲突时只覆盖对应位置；条目不可变，并发覆盖只会导致重新分析
+    private static final VariablePlan[] cache = new VariablePlan[CACHE_SIZE];
+
+    private final ExpressionNamespace owner;
+    private final Map<String, String> source;
+    private final int hash;
+    private final Entry[] deferred;
+    private final Entry[] eager;
+    private final int generation;
+
+    private VariablePlan(ExpressionNamespace owner, Map<String, String> vars) {
+        this.owner = owner;
+        this.generation = owner.getGeneration();
+        this.source = Collections.unmodifiableMap(new LinkedHashMap<>(vars));
+        this.hash = vars.hashCode();
+
+        Map<String, Entry> entries = new LinkedHashMap<>();
+        for (Map.Entry<String, String> var : vars.entrySet()) {
+            entries.put(var.getKey(), new Entry(owner, var.getKey(), var.getValue()));
+        }
+
+        Set<String> cyclic = findCycles(entries);
+        if (!cyclic.isEmpty()) {
+            OElib.LOGGER.debug("Variables {} reference each other cyclically and are evaluated in declaration order", cyclic);
+        }
+
+        List<Entry> deferredEntries = new ArrayList<>();
+        List<Entry> eagerEntries = new ArrayList<>();
+        for (Entry entry : entries.values()) {
+            (cyclic.contains(entry.name) ? eagerEntries : deferredEntries).add(entry);
+        }
+        this.deferred = deferredEntries.toArray(new Entry[0]);
+        this.eager = eagerEntries.toArray(new Entry[0]);
+    }
+
+    /**
+     * 获取变量映射的求值计划。
+     * <p>
+     * 计划按变量映射的内容缓存，保存分析时的副本，键值和迭代顺序都相同的映射共享同一计划，
+     * 调用方复用并修改同一映射时按修改后的内容重新分析。引擎重新初始化后重新分析。
+     * </p>
+     *
+     * @param owner 变量所属的引擎实例
+     * @param vars  变量映射
+     * @return 求值计划
+     */
+    static VariablePlan of(ExpressionNamespace owner, Map<String, String> vars) {
+        int hash = vars.hashCode();
+        int index = (hash ^ (hash >>> 16)) & (CACHE_SIZE - 1);
+        VariablePlan plan = cache[index];
+        if (plan != null && plan.hash == hash && plan.owner == owner && plan.generation == owner.getGeneration()
+                && sameEntries(plan.source, vars)) {
+            return plan;
+        }
+        plan = build(owner, vars);
+        cache[index] = plan;
+        return plan;
+    }
+
+    /**
+     * 比较两个映射的键值对，迭代顺序也必须相同，因为循环引用中的变量按声明顺序求值。
+     */
+    private static boolean sameEntries(Map<String, String> cached, Map<String, String> vars) {
+        if (cached.size() != vars.size()) {
+            return false;
+        }
+        Iterator<Map.Entry<String, String>> expected = cached.entrySet().iterator();
+        for (Map.Entry<String, String> entry : vars.entrySet()) {
+            Map.Entry<String, String> other = expected.next();
+            if (!Objects.equals(other.getKey(), entry.getKey()) || !Objects.equals(other.getValue(), entry.getValue())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 创建不缓存的求值计划。
+     *
+     * @param owner 变量所属的引擎实例
+     * @param vars  变量映射
+     * @return 求值计划
+     */
+    static VariablePlan build(ExpressionNamespace owner, Map<String, String> vars) {
+        return new VariablePlan(owner, vars);
+    }
+
+    /**
+     * 清空属于给定引擎实例的缓存计划。
+     *
+     * @param owner 引擎实例
+     */
+    static void clearCache(ExpressionNamespace owner) {
+        for (int i = 0; i < cache.length; i++) {
+            VariablePlan plan = cache[i];
+            if (plan != null && plan.owner == owner) {
+                cache[i] = null;
+            }
+        }
+    }
+
+    /**
+     * 获取分析时的引擎代数。
+     *
+     * @return 引擎代数
+     */
+    int generation() {
+        return generation;
+    }
+
+    /**
+     * 将变量写入帧：无循环引用的变量延迟求值，其余变量按声明顺序立即求值。
+     *
+     * @param frame 变量帧
+     */
+    void bind(VariableFrame frame) {
+        for (Entry entry : deferred) {
+            frame.defer(entry.slot, entry);
+        }
+        for (Entry entry : eager) {
+            frame.set(entry.slot, entry.compute(frame));
+        }
+    }
+
+    /**
+     * 找出所有处于循环引用中的变量（包括引用自身的变量）。
+     */
+    private static Set<String> findCycles(Map<String, Entry> entries) {
+        Map<String, Set<String>> edges = new HashMap<>();
+        for (Entry entry : entries.values()) {
+            Set<String> targets = entry.handle != null ? new HashSet<>(entry.handle.getVariables()) : new HashSet<>();
+            targets.retainAll(entries.keySet());
+            edges.put(entry.name, targets);
+        }
+
+        Set<String> cyclic = new LinkedHashSet<>();
+        for (String name : entries.keySet()) {
+            // 从变量出发能回到自身即处于循环中
+            Deque<String> pending = new ArrayDeque<>(edges.get(name));
+            Set<String> visited = new HashSet<>();
+            while (!pending.isEmpty()) {
+                String next = pending.pop();
+                if (next.equals(name)) {
+                    cyclic.add(name);
+                    break;
+                }
+                if (visited.add(next)) {
+                    pending.addAll(edges.get(next));
+                }
+            }
+        }
+        return cyclic;
+    }
+
+    /**
+     * 单个变量。
+     */
+    private static final class Entry implements VariableFrame.Deferred {
+        private final String name;
+        private final String raw;
+        private final int slot;
+        private final CompiledExpression handle;
+
+        private Entry(ExpressionNamespace owner, String name, String raw) {
+            this.name = name;
+            this.raw = raw;
+            this.slot = VariableFrame.slot(name);
+            this.handle = raw != null ? owner.handle(raw) : null;
+        }
+
+        @Override
+        public Object compute(VariableFrame frame) {
+            return ExpressionNamespace.resolveVariable(name, raw, handle, frame);
+        }
+    }
+}
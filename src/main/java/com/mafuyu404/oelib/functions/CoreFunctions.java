@@ -17,7 +17,8 @@ public class CoreFunctions {
      * @param modid 模组ID
      * @return 是否已加载
      */
-    @ExpressionFunction(value = "isModLoaded", description = "检查模组是否已加载", category = "mod")
+    @ExpressionFunction(value = "isModLoaded", description = "检查模组是否已加载", category = "mod",
+            stability = ExpressionFunction.Stability.PURE, threadSafe = true)
     public static boolean isModLoaded(String modid) {
         return ModList.get().isLoaded(modid);
     }
@@ -0,0 +1,260 @@
+package com.mafuyu404.oelib.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 表达式词法分析器。
+ * <p>
+ * 将 MVEL 表达式切分为标识符、数字、字符串字面量和符号，
+ * 用于表达式规范化以及函数使用分析等不需要完整语法树的场景。
+ * 行注释和块注释与空白一样只起分隔作用，不产生词法单元。
+ * </p>
+ */
+public class ExpressionTokenizer {
+
+    /**
+     * 词法单元类型。
+     */
+    public enum TokenType {
+        IDENTIFIER,
+        NUMBER,
+        STRING,
+        OPERATOR,
+        SEPARATOR
+    }
+
+    /**
+     * 词法单元。
+     *
+     * @param type            类型
+     * @param text            原始文本
+     * @param start           起始位置（包含）
+     * @param end             结束位置（不包含）
+     * @param precededBySpace 前面是否紧邻空白字符
+     */
+    public record Token(TokenType type, String text, int start, int end, boolean precededBySpace) {
+
+        /**
+         * 是否为指定文本的符号或分隔符。
+         */
+        public boolean is(char symbol) {
+            return (type == TokenType.OPERATOR || type == TokenType.SEPARATOR)
+                    && text.length() == 1 && text.charAt(0) == symbol;
+        }
+    }
+
+    /**
+     * 切分表达式。
+     *
+     * @param expression 表达式字符串
+     * @return 词法单元列表
+     */
+    public static List<Token> tokenize(String expression) {
+        List<Token> tokens = new ArrayList<>();
+        int length = expression.length();
+        int i = 0;
+        boolean space = false;
+
+        while (i < length) {
+            char c = expression.charAt(i);
+            int start = i;
+
+            if (Character.isWhitespace(c)) {
+                space = true;
+                i++;
+                continue;
+            }
+            if (isCommentStart(expression, i)) {
+                space = true;
+                i = commentEnd(expression, i);
+                continue;
+            }
+
+            TokenType type;
+            if (c == '\'' || c == '"') {
+                i++;
+                while (i < length && expression.charAt(i) != c) {
+                    if (expression.charAt(i) == '\\') {
+                        i++;
+                    }
+                    i++;
+                }
+                i = Math.min(i + 1, length);
+                type = TokenType.STRING;
+            } else if (Character.isJavaIdentifierStart(c)) {
+                while (i < length && Character.isJavaIdentifierPart(expression.charAt(i))) {
+                    i++;
+                }
+                type = TokenType.IDENTIFIER;
+            } else if (Character.isDigit(c) || (c == '.' && i + 1 < length && Character.isDigit(expression.charAt(i + 1)))) {
+                while (i < length && isNumberPart(expression, start, i)) {
+                    i++;
+                }
+                type = TokenType.NUMBER;
+            } else if ("()[]{},;".indexOf(c) >= 0) {
+                i++;
+                type = TokenType.SEPARATOR;
+            } else {
+                i++;
+                type = TokenType.OPERATOR;
+            }
+
+            tokens.add(new Token(type, expression.substring(start, i), start, i, space));
+            space = false;
+        }
+
+        return tokens;
+    }
+
+    /**
+     * 检查值是否为普通文本，而不是写错的表达式。
+     * <p>
+     * 条件和变量的值编译失败时按原始字符串使用，例如 {@code Iron Golem} 或 {@code minecraft:*}。
+     * 只由标识符、数字和资源位置中常见的符号（{@code : * / . - #}）组成的值视为普通文本；
+     * 包含字符串字面量、括号、比较或逻辑运算符的值视为表达式。
+     * </p>
+     *
+     * @param value 原始值
+     * @return 是否为普通文本
+     */
+    public static boolean isPlainText(String value) {
+        for (Token token : tokenize(value)) {
+            switch (token.type()) {
+                case IDENTIFIER, NUMBER -> {
+                }
+                case OPERATOR -> {
+                    if (":*/.-#".indexOf(token.text().charAt(0)) < 0) {
+                        return false;
+                    }
+                }
+                default -> {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 规范化表达式。
+     * <p>
+     * 去除不影响语义的空白和注释，使仅在格式上不同的表达式得到相同的字符串。
+     * 字符串字面量保持原样；相邻的两个标识符/数字或两个运算符之间保留一个空格，
+     * 避免 {@code a - -b} 之类的表达式被合并成不同的含义。
+     * </p>
+     *
+     * @param expression 表达式字符串
+     * @return 规范化后的表达式
+     */
+    public static String normalize(String expression) {
+        if (isNormalized(expression)) {
+            return expression;
+        }
+
+        StringBuilder builder = new StringBuilder(expression.length());
+        Token previous = null;
+        for (Token token : tokenize(expression)) {
+            if (previous != null && token.precededBySpace() && needsSpace(previous.type(), token.type())) {
+                builder.append(' ');
+            }
+            builder.append(token.text());
+            previous = token;
+        }
+        return builder.toString();
+    }
+
+    private static boolean isNormalized(String expression) {
+        int length = expression.length();
+        if (length == 0) {
+            return true;
+        }
+        if (Character.isWhitespace(expression.charAt(0)) || Character.isWhitespace(expression.charAt(length - 1))) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            char c = expression.charAt(i);
+            if (c == '\'' || c == '"') {
+                i++;
+                while (i < length && expression.charAt(i) != c) {
+                    if (expression.charAt(i) == '\\') {
+                        i++;
+                    }
+                    i++;
+                }
+                continue;
+            }
+            if (isCommentStart(expression, i)) {
+                return false;
+            }
+            if (Character.isWhitespace(c)) {
+                if (c != ' ' || Character.isWhitespace(expression.charAt(i + 1))) {
+                    return false;
+                }
+                if (!needsSpace(classify(expression.charAt(i - 1)), classify(expression.charAt(i + 1)))) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static boolean isCommentStart(String expression, int index) {
+        if (expression.charAt(index) != '/' || index + 1 >= expression.length()) {
+            return false;
+        }
+        char next = expression.charAt(index + 1);
+        return next == '/' || next == '*';
+    }
+
+    /**
+     * 获取从 {@code start} 开始的注释的结束位置（不包含）。
+     * 行注释在换行符之前结束，换行符按空白处理；块注释未闭合时延伸到表达式末尾。
+     */
+    private static int commentEnd(String expression, int start) {
+        int length = expression.length();
+        if (expression.charAt(start + 1) == '/') {
+            int i = start + 2;
+            while (i < length && expression.charAt(i) != '\n' && expression.charAt(i) != '\r') {
+                i++;
+            }
+            return i;
+        }
+        int close = expression.indexOf("*/", start + 2);
+        return close < 0 ? length : close + 2;
+    }
+
+    private static TokenType classify(char c) {
+        if (c == '\'' || c == '"') {
+            return TokenType.STRING;
+        }
+        if (Character.isJavaIdentifierPart(c)) {
+            return TokenType.IDENTIFIER;
+        }
+        if ("()[]{},;".indexOf(c) >= 0) {
+            return TokenType.SEPARATOR;
+        }
+        return TokenType.OPERATOR;
+    }
+
+    private static boolean needsSpace(TokenType left, TokenType right) {
+        boolean leftWord = left == TokenType.IDENTIFIER || left == TokenType.NUMBER;
+        boolean rightWord = right == TokenType.IDENTIFIER || right == TokenType.NUMBER;
+        return (leftWord && rightWord) || (left == TokenType.OPERATOR && right == TokenType.OPERATOR);
+    }
+
+    private static boolean isNumberPart(String expression, int start, int index) {
+        char c = expression.charAt(index);
+        if (Character.isLetterOrDigit(c) || c == '_') {
+            return true;
+        }
+        if (c == '.') {
+            return index + 1 < expression.length() && Character.isDigit(expression.charAt(index + 1));
+        }
+        if ((c == '+' || c == '-') && index > 0) {
+            char previous = Character.toLowerCase(expression.charAt(index - 1));
+            return previous == 'e' && !expression.regionMatches(true, start, "0x", 0, 2);
+        }
+        return false;
+    }
+}
@@ -5,23 +5,38 @@ import net.minecraft.resources.ResourceLocation;
 import net.minecraftforge.fml.ModList;
 
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * 函数使用分析器。
  * <p>
  * 分析数据包中使用的表达式函数，支持智能函数注册优化。
+ * 表达式经 {@link ExpressionTokenizer} 切分后识别函数调用，字符串字面量中的内容以及对象上的方法调用
+ * （如 {@code player.getName()}）不会被当作函数使用。每个表达式的分析结果会被缓存。
  * </p>
  */
 public class FunctionUsageAnalyzer {
 
-    private static final Pattern FUNCTION_PATTERN = Pattern.compile("([a-zA-Z_][a-zA-Z0-9_]*)\\s*\\(");
+    private static final int MAX_CACHED = 4096;
+    private static final Map<String, Set<String>> cache = new ConcurrentHashMap<>();
+    private static final Set<String> KEYWORDS = Set.of(
+            "if", "else", "for", "foreach", "while", "until", "do", "switch", "case", "default",
+            "try", "catch", "finally", "throw", "throws", "return", "break", "continue",
+            "new", "this", "super", "null", "true", "false", "instanceof", "def", "function",
+            "public", "private", "protected", "static", "final", "abstract",
+            "class", "interface", "extends", "implements", "package", "import",
+            "int", "long", "float", "double", "boolean", "char", "byte", "short",
+            "void", "String", "Object", "List", "Map", "Set"
+    );
 
     /**
      * 分析数据包中使用的所有函数。
+     * <p>
+     * 各数据条目并行分析，数据提取器需要能在多个线程中同时调用。
+     * </p>
      *
      * @param dataPackData 数据包数据
      * @param dataExtractor 数据提取器，用于从数据对象中提取表达式
@@ -30,19 +45,12 @@ public class FunctionUsageAnalyzer {
      */
     public static <T> Set<String> analyzeUsedFunctions(Map<ResourceLocation, T> dataPackData,
                                                        DataExpressionExtractor<T> dataExtractor) {
-        Set<String> usedFunctions = new HashSet<>();
+        Set<String> usedFunctions = ConcurrentHashMap.newKeySet();
 
-        for (Map.Entry<ResourceLocation, T> entry : dataPackData.entrySet()) {
-            T data = entry.getValue();
-
-            // 检查模组加载状态
-            if (!shouldLoadDataPackFunctions(data, entry.getKey(), dataExtractor)) {
-                continue;
-            }
-
-            Set<String> fileFunctions = analyzeSingleFile(data, dataExtractor);
-            usedFunctions.addAll(fileFunctions);
-        }
+        dataPackData.entrySet().parallelStream()
+                // 检查模组加载状态
+                .filter(entry -> shouldLoadDataPackFunctions(entry.getValue(), entry.getKey(), dataExtractor))
+                .forEach(entry -> analyzeSingleFile(entry.getValue(), dataExtractor, usedFunctions));
 
         OElib.LOGGER.debug("Found {} used functions in data packages: {}",
                 usedFunctions.size(), usedFunctions);
@@ -85,11 +93,15 @@ public class FunctionUsageAnalyzer {
     private static String extractModIdFromExpression(String expression) {
         if (expression == null) return null;
 
-        Pattern pattern = Pattern.compile("isModLoaded\\s*\\(\\s*['\"]([^'\"]+)['\"]\\s*\\)");
-        Matcher matcher = pattern.matcher(expression);
-
-        if (matcher.find()) {
-            return matcher.group(1);
+        // 查找 isModLoaded('modid') 形式的调用
+        List<ExpressionTokenizer.Token> tokens = ExpressionTokenizer.tokenize(expression);
+        for (int i = 0; i + 3 < tokens.size(); i++) {
+            ExpressionTokenizer.Token argument = tokens.get(i + 2);
+            if (tokens.get(i).text().equals("isModLoaded") && isCall(tokens, i)
+                    && argument.type() == ExpressionTokenizer.TokenType.STRING && tokens.get(i + 3).is(')')
+                    && argument.text().length() > 2) {
+                return argument.text().substring(1, argument.text().length() - 1);
+            }
         }
 
         return null;
@@ -98,57 +110,78 @@ public class FunctionUsageAnalyzer {
     /**
      * 分析单个数据包文件中使用的函数。
      */
-    private static <T> Set<String> analyzeSingleFile(T data, DataExpressionExtractor<T> dataExtractor) {
-        Set<String> functions = new HashSet<>();
-
+    private static <T> void analyzeSingleFile(T data, DataExpressionExtractor<T> dataExtractor, Set<String> functions) {
         // 提取所有表达式
         Set<String> expressions = dataExtractor.extractAllExpressions(data);
+        if (expressions == null) {
+            return;
+        }
 
         // 分析每个表达式中的函数
         for (String expression : expressions) {
-            functions.addAll(extractFunctionsFromExpression(expression));
+            functions.addAll(analyzeExpression(expression));
         }
-
-        return functions;
     }
 
     /**
      * 从表达式中提取函数名。
      */
     public static Set<String> extractFunctionsFromExpression(String expression) {
-        Set<String> functions = new HashSet<>();
+        return new HashSet<>(analyzeExpression(expression));
+    }
 
-        if (expression == null || expression.trim().isEmpty()) {
-            return functions;
+    /**
+     * 清空表达式分析结果的缓存。
+     */
+    public static void clearCache() {
+        cache.clear();
+    }
+
+    private static Set<String> analyzeExpression(String expression) {
+        if (expression == null || expression.isBlank()) {
+            return Set.of();
         }
 
-        Matcher matcher = FUNCTION_PATTERN.matcher(expression);
-        while (matcher.find()) {
-            String functionName = matcher.group(1);
+        Set<String> functions = cache.get(expression);
+        if (functions != null) {
+            return functions;
+        }
 
-            if (!isKeyword(functionName)) {
-                functions.add(functionName);
+        Set<String> found = new HashSet<>();
+        List<ExpressionTokenizer.Token> tokens = ExpressionTokenizer.tokenize(expression);
+        for (int i = 0; i + 1 < tokens.size(); i++) {
+            String name = tokens.get(i).text();
+            if (isCall(tokens, i) && !KEYWORDS.contains(name)) {
+                found.add(name);
             }
         }
+        functions = Set.copyOf(found);
 
+        if (cache.size() >= MAX_CACHED) {
+            cache.clear();
+        }
+        cache.put(expression, functions);
         return functions;
     }
 
     /**
-     * 检查是否为关键字（非函数名）。
+     * 检查下标处的词法单元是否为函数调用的函数名。
+     * <p>
+     * 对象上的方法调用、构造器调用以及函数定义都不算。
+     * </p>
      */
-    private static boolean isKeyword(String word) {
-        Set<String> keywords = Set.of(
-                "if", "else", "for", "while", "do", "switch", "case", "default",
-                "try", "catch", "finally", "throw", "throws", "return", "break", "continue",
-                "new", "this", "super", "null", "true", "false", "instanceof",
-                "public", "private", "protected", "static", "final", "abstract",
-                "class", "interface", "extends", "implements", "package", "import",
-                "int", "long", "float", "double", "boolean", "char", "byte", "short",
-                "void", "String", "Object", "List", "Map", "Set"
-        );
-
-        return keywords.contains(word);
+    private static boolean isCall(List<ExpressionTokenizer.Token> tokens, int index) {
+        ExpressionTokenizer.Token name = tokens.get(index);
+        if (name.type() != ExpressionTokenizer.TokenType.IDENTIFIER || index + 1 >= tokens.size()
+                || !tokens.get(index + 1).is('(')) {
+            return false;
+        }
+        if (index == 0) {
+            return true;
+        }
+        ExpressionTokenizer.Token previous = tokens.get(index - 1);
+        return !previous.is('.') && !(previous.type() == ExpressionTokenizer.TokenType.IDENTIFIER
+                && (previous.text().equals("new") || previous.text().equals("def") || previous.text().equals("function")));
     }
 
     /**
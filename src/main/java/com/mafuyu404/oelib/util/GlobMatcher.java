@@ -0,0 +1,213 @@
+package com.mafuyu404.oelib.util;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 通配符匹配器。
+ * <p>
+ * 支持 {@code *} 匹配任意长度（包括空）的字符序列，其余字符均按字面匹配，
+ * 正则表达式特殊字符（如 {@code .}、{@code +}、{@code [}）不再具有特殊含义。
+ * 前缀、后缀、包含等常见形式使用专门的快速路径，其余情况按片段顺序查找，均不使用正则表达式。
+ * </p>
+ */
+public final class GlobMatcher {
+
+    private static final int MAX_CACHED = 1024;
+    private static final Map<String, Entry> cache = new ConcurrentHashMap<>();
+    private static final Queue<String> clock = new ConcurrentLinkedQueue<>();
+    private static final AtomicBoolean evicting = new AtomicBoolean();
+
+    private final String pattern;
+    private final Kind kind;
+    private final String[] segments;
+    private final int minLength;
+
+    private GlobMatcher(String pattern) {
+        this.pattern = pattern;
+        this.segments = pattern.split("\\*", -1);
+
+        int length = 0;
+        for (String segment : segments) {
+            length += segment.length();
+        }
+        this.minLength = length;
+        this.kind = classify(pattern, segments);
+    }
+
+    /**
+     * 获取通配符模式对应的匹配器。
+     * <p>
+     * 匹配器会被缓存，相同模式只编译一次。缓存超出容量时与已编译表达式缓存一样使用 CLOCK 算法淘汰，
+     * 最近使用过的模式会被保留。
+     * </p>
+     *
+     * @param pattern 通配符模式
+     * @return 匹配器
+     */
+    public static GlobMatcher of(String pattern) {
+        Entry entry = cache.get(pattern);
+        if (entry != null) {
+            entry.referenced = true;
+            return entry.matcher;
+        }
+
+        boolean[] created = new boolean[1];
+        entry = cache.computeIfAbsent(pattern, k -> {
+            created[0] = true;
+            return new Entry(new GlobMatcher(k));
+        });
+        if (created[0]) {
+            clock.offer(pattern);
+            evictIfNeeded();
+        } else {
+            entry.referenced = true;
+        }
+        return entry.matcher;
+    }
+
+    private static void evictIfNeeded() {
+        if (cache.size() <= MAX_CACHED || !evicting.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            // 每个条目最多获得一次二次机会，循环次数有上限
+            int budget = MAX_CACHED * 2;
+            while (cache.size() > MAX_CACHED && budget-- > 0) {
+                String pattern = clock.poll();
+                if (pattern == null) {
+                    break;
+                }
+                Entry entry = cache.get(pattern);
+                if (entry == null) {
+                    continue;
+                }
+                if (entry.referenced) {
+                    entry.referenced = false;
+                    clock.offer(pattern);
+                } else {
+                    cache.remove(pattern, entry);
+                }
+            }
+        } finally {
+            evicting.set(false);
+        }
+    }
+
+    /**
+     * 检查字符串是否包含通配符。
+     *
+     * @param value 字符串
+     * @return 是否包含 {@code *}
+     */
+    public static boolean isGlob(String value) {
+        return value.indexOf('*') >= 0;
+    }
+
+    /**
+     * 获取原始模式。
+     *
+     * @return 通配符模式
+     */
+    public String pattern() {
+        return pattern;
+    }
+
+    /**
+     * 检查字符串是否匹配。
+     *
+     * @param value 待匹配的字符串
+     * @return 是否匹配
+     */
+    public boolean matches(String value) {
+        if (value.length() < minLength) {
+            return false;
+        }
+        return switch (kind) {
+            case EXACT -> value.equals(pattern);
+            case ANY -> true;
+            case PREFIX -> value.startsWith(segments[0]);
+            case SUFFIX -> value.endsWith(segments[1]);
+            case CONTAINS -> value.contains(segments[1]);
+            case PREFIX_SUFFIX -> value.startsWith(segments[0]) && value.endsWith(segments[1]);
+            case SEGMENTS -> matchSegments(value);
+        };
+    }
+
+    private boolean matchSegments(String value) {
+        String first = segments[0];
+        String last = segments[segments.length - 1];
+        if (!value.startsWith(first) || !value.endsWith(last)) {
+            return false;
+        }
+
+        // 仅含 * 的模式中，各片段按最左位置贪心匹配即可得到正确结果
+        int position = first.length();
+        int limit = value.length() - last.length();
+        for (int i = 1; i < segments.length - 1; i++) {
+            String segment = segments[i];
+            if (segment.isEmpty()) {
+                continue;
+            }
+            int index = value.indexOf(segment, position);
+            if (index < 0 || index + segment.length() > limit) {
+                return false;
+            }
+            position = index + segment.length();
+        }
+        return true;
+    }
+
+    private static Kind classify(String pattern, String[] segments) {
+        if (segments.length == 1) {
+            return Kind.EXACT;
+        }
+        boolean allEmpty = true;
+        for (String segment : segments) {
+            if (!segment.isEmpty()) {
+                allEmpty = false;
+                break;
+            }
+        }
+        if (allEmpty) {
+            return Kind.ANY;
+        }
+        if (segments.length == 2) {
+            if (segments[1].isEmpty()) {
+                return Kind.PREFIX;
+            }
+            return segments[0].isEmpty() ? Kind.SUFFIX : Kind.PREFIX_SUFFIX;
+        }
+        if (segments.length == 3 && segments[0].isEmpty() && segments[2].isEmpty()) {
+            return Kind.CONTAINS;
+        }
+        return Kind.SEGMENTS;
+    }
+
+    @Override
+    public String toString() {
+        return "GlobMatcher[" + pattern + ", " + kind + "]";
+    }
+
+    private static final class Entry {
+        private final GlobMatcher matcher;
+        private volatile boolean referenced;
+
+        private Entry(GlobMatcher matcher) {
+            this.matcher = matcher;
+        }
+    }
+
+    private enum Kind {
+        EXACT,
+        ANY,
+        PREFIX,
+        SUFFIX,
+        CONTAINS,
+        PREFIX_SUFFIX,
+        SEGMENTS
+    }
+}
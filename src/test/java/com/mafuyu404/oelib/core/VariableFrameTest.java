@@ -0,0 +1,26 @@
+package com.mafuyu404.oelib.core;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class VariableFrameTest {
+
+    @Test
+    void toMapIncludesVariablesAssignedByDeferredVariables() {
+        // 变量名在本测试中首次出现，计算延迟变量时才会注册槽位
+        String assigned = "assignedInsideDeferred_" + System.nanoTime();
+        try (VariableFrame frame = VariableFrame.acquire()) {
+            frame.defer(VariableFrame.slot("c"), f -> {
+                f.set(assigned, 4);
+                return 5;
+            });
+
+            Map<String, Object> map = frame.toMap();
+
+            assertEquals(Map.of("c", 5, assigned, 4), map);
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.mafuyu404.oelib.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ExpressionTokenizerTest {
+
+    @Test
+    void normalizeDoesNotMoveCodeIntoLineComments() {
+        assertEquals("x>1&&x<2", ExpressionTokenizer.normalize("x > 1 // c\n && x < 2"));
+        assertEquals("x>1", ExpressionTokenizer.normalize("x > 1 // c && x < 2"));
+    }
+
+    @Test
+    void normalizeDropsBlockComments() {
+        assertEquals("x>1&&x<2", ExpressionTokenizer.normalize("x > 1 /* it's */ && x < 2"));
+        assertEquals("a b", ExpressionTokenizer.normalize("a/**/b"));
+    }
+}